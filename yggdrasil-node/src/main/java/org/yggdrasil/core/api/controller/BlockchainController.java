@@ -1,29 +1,43 @@
 package org.yggdrasil.core.api.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.web.bind.annotation.*;
+import org.yggdrasil.core.ledger.chain.AddressIndex;
 import org.yggdrasil.core.ledger.chain.Block;
 import org.yggdrasil.core.ledger.chain.Blockchain;
+import org.yggdrasil.core.ledger.chain.ChainVerifier;
 import org.yggdrasil.core.ledger.transaction.BasicTransaction;
 import org.yggdrasil.core.ledger.transaction.Transaction;
 import org.yggdrasil.core.ledger.wallet.Wallet;
 import org.yggdrasil.core.utils.CryptoHasher;
+import org.yggdrasil.core.utils.MerkleProof;
 import org.yggdrasil.core.api.service.BlockchainService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -38,8 +52,19 @@ public class BlockchainController {
 
     Logger logger = LoggerFactory.getLogger(BlockchainController.class);
 
+    // The number of blocks returned by a page of /blocks when no limit is given.
+    @Value("${blockchain.api.page-size:100}")
+    private Integer _PAGE_SIZE;
+    // The most blocks returned by a single page of /blocks.
+    @Value("${blockchain.api.max-page-size:1000}")
+    private Integer _MAX_PAGE_SIZE;
+
     private ObjectMapper objectMapper;
 
+    // The application's JSON mapper, for streaming responses the same way as the others are written
+    @Autowired
+    private ObjectMapper jsonMapper;
+
     @Autowired
     BlockchainService service;
 
@@ -48,9 +73,79 @@ public class BlockchainController {
         this.objectMapper = new ObjectMapper();
     }
 
+    /**
+     * Returns a page of the blocks of the main chain between two heights, in ascending order of
+     * height, defaulting to the whole chain. The blocks are written to the response one at a time
+     * as they are read, followed by the cursor of the next page, which is null on the last page.
+     * Passing the cursor back continues the same range; if the chain was reorganized below the
+     * cursor in the meantime, the request fails with a conflict. The blocks parameter returns the
+     * last number of blocks instead.
+     */
     @RequestMapping(value = "/blocks", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Blockchain> getBlockchain(@RequestParam(name = "blocks", required = false) Integer blocks) throws Exception {
-        return new ResponseEntity<>(this.service.getBlockchain(), HttpStatus.OK);
+    public ResponseEntity<StreamingResponseBody> getBlocks(@RequestParam(name = "fromHeight", required = false) Long fromHeight,
+                                                           @RequestParam(name = "toHeight", required = false) Long toHeight,
+                                                           @RequestParam(name = "limit", required = false) Integer limit,
+                                                           @RequestParam(name = "cursor", required = false) String cursor,
+                                                           @RequestParam(name = "blocks", required = false) Integer blocks) {
+        long chainHeight = this.service.getChainHeight();
+        long from;
+        long to;
+        if(cursor != null) {
+            ByteBuffer decoded;
+            try {
+                decoded = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+                from = decoded.getLong();
+                to = decoded.getLong();
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            byte[] previousHash = new byte[decoded.remaining()];
+            decoded.get(previousHash);
+            Optional<byte[]> indexedHash = this.service.getBlockHashAtHeight(from - 1);
+            if(indexedHash.isEmpty() || !CryptoHasher.isEqualHashes(indexedHash.get(), previousHash)) {
+                return new ResponseEntity<>(HttpStatus.CONFLICT);
+            }
+        } else if(blocks != null && blocks > 0) {
+            from = Math.max(0, chainHeight - blocks + 1);
+            to = chainHeight;
+        } else {
+            from = fromHeight == null ? 0 : Math.max(0, fromHeight);
+            to = toHeight == null ? chainHeight : toHeight;
+        }
+        int pageSize = (limit == null || limit <= 0) ? _PAGE_SIZE : Math.min(limit, _MAX_PAGE_SIZE);
+        if(blocks != null && blocks > 0 && cursor == null) {
+            pageSize = Math.min(blocks, _MAX_PAGE_SIZE);
+        }
+        long rangeEnd = to;
+        int pageLimit = pageSize;
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = this.jsonMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("blocks");
+                Iterator<Block> page = this.service.iterateBlocks(from, rangeEnd);
+                Block last = null;
+                int written = 0;
+                while(written < pageLimit && page.hasNext()) {
+                    last = page.next();
+                    generator.writeObject(last);
+                    written++;
+                }
+                generator.writeEndArray();
+                long nextHeight = last == null ? rangeEnd + 1 : last.getBlockHeight().longValue() + 1;
+                if(last != null && nextHeight <= rangeEnd && page.hasNext()) {
+                    generator.writeStringField("nextCursor", Base64.getUrlEncoder().withoutPadding().encodeToString(
+                            ByteBuffer.allocate(2 * Long.BYTES + last.getBlockHash().length)
+                                    .putLong(nextHeight)
+                                    .putLong(rangeEnd)
+                                    .put(last.getBlockHash())
+                                    .array()));
+                } else {
+                    generator.writeNullField("nextCursor");
+                }
+                generator.writeEndObject();
+            }
+        };
+        return new ResponseEntity<>(body, HttpStatus.OK);
     }
 
     @RequestMapping(value = "/block", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -58,6 +153,89 @@ public class BlockchainController {
         return new ResponseEntity<>(this.service.getBlock(CryptoHasher.hashByteArray(blockHash)), HttpStatus.OK);
     }
 
+    @RequestMapping(value = "/block/invalidate", method = RequestMethod.PUT)
+    public ResponseEntity<?> invalidateBlock(@RequestParam(name = "blockHash", required = true) String blockHash) {
+        this.service.invalidateBlock(CryptoHasher.hashByteArray(blockHash));
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/address/{address}/balance", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> getAddressBalance(@PathVariable(name = "address") String address) {
+        Optional<BigDecimal> balance = this.service.getAddressBalance(CryptoHasher.hashByteArray(address));
+        if(balance.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("address", address);
+        response.put("balance", balance.get());
+        response.put("indexedHeight", this.service.getAddressIndexHeight());
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/address/{address}/history", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> getAddressHistory(@PathVariable(name = "address") String address,
+                                                                 @RequestParam(name = "limit", required = false) Integer limit,
+                                                                 @RequestParam(name = "cursor", required = false) String cursor) {
+        Optional<AddressIndex.History> history;
+        try {
+            history = this.service.getAddressHistory(CryptoHasher.hashByteArray(address),
+                    cursor == null ? null : Base64.getUrlDecoder().decode(cursor),
+                    (limit == null || limit <= 0) ? _PAGE_SIZE : Math.min(limit, _MAX_PAGE_SIZE));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if(history.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("address", address);
+        response.put("history", history.get().getEntries());
+        response.put("nextCursor", history.get().getNextCursor() == null ? null
+                : Base64.getUrlEncoder().withoutPadding().encodeToString(history.get().getNextCursor()));
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/cache", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Long>> getCacheStats() {
+        return new ResponseEntity<>(this.service.getCacheStats(), HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/cache/coins", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Long>> getCoinsCacheStats() {
+        return new ResponseEntity<>(this.service.getCoinsCacheStats(), HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/cache/filter", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Long>> getFilterStats() {
+        return new ResponseEntity<>(this.service.getFilterStats(), HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/cache/signatures", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Map<String, Long>>> getSignatureCacheStats() {
+        return new ResponseEntity<>(this.service.getSignatureCacheStats(), HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/storage/compression", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Long>> getCompressionStats() {
+        return new ResponseEntity<>(this.service.getCompressionStats(), HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/indexers", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Map<String, Long>>> getIndexerStats() {
+        return new ResponseEntity<>(this.service.getIndexerStats(), HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/verify", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ChainVerifier.Result> verifyChain(@RequestParam(name = "fromHeight", required = false) Long fromHeight,
+                                                            @RequestParam(name = "toHeight", required = false) Long toHeight) {
+        return new ResponseEntity<>(this.service.verifyChain(fromHeight, toHeight), HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/verify/progress", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Long>> getVerifyProgress() {
+        return new ResponseEntity<>(this.service.getVerifyProgress(), HttpStatus.OK);
+    }
+
     @RequestMapping(value = "/mine", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity mineBlock() throws Exception {
         this.service.mineBlock();
@@ -95,6 +273,39 @@ public class BlockchainController {
         return new ResponseEntity<>(this.service.getTransaction(transactions), HttpStatus.OK);
     }
 
+    @RequestMapping(value = "/transaction/{txnHash}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Transaction> getConfirmedTransaction(@PathVariable(name = "txnHash") String txnHash) {
+        return this.service.getConfirmedTransaction(CryptoHasher.hashByteArray(txnHash))
+                .map(txn -> new ResponseEntity<>(txn, HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Returns the proof that a confirmed transaction is in a block, along with the merkle root
+     * of the block to check it against. Without a block hash the block is looked up with the
+     * transaction index. Proofs are only available for blocks built with the current merkle tree.
+     */
+    @RequestMapping(value = "/transaction/{txnHash}/proof", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> getMerkleProof(@PathVariable(name = "txnHash") String txnHash,
+                                                              @RequestParam(name = "blockHash", required = false) String blockHash) {
+        Optional<Pair<byte[], MerkleProof>> proof;
+        try {
+            proof = this.service.getMerkleProof(CryptoHasher.hashByteArray(txnHash),
+                    blockHash == null ? null : CryptoHasher.hashByteArray(blockHash));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if(proof.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        Optional<Block> block = this.service.getBlock(proof.get().getLeft());
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("blockHash", CryptoHasher.humanReadableHash(proof.get().getLeft()));
+        response.put("merkleRoot", block.map(b -> CryptoHasher.humanReadableHash(b.getHeader().getMerkleRoot())).orElse(null));
+        response.put("proof", proof.get().getRight());
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
     // Used to test in-development features
     @RequestMapping(value = "/testFeature", method = RequestMethod.HEAD)
     public void testFeature() throws Exception {
@@ -2,16 +2,22 @@ package org.yggdrasil.core.api.service;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.core.env.Environment;
+import org.yggdrasil.core.ledger.chain.AddressIndex;
 import org.yggdrasil.core.ledger.chain.Block;
 import org.yggdrasil.core.ledger.chain.BlockMine;
 import org.yggdrasil.core.ledger.chain.Blockchain;
+import org.yggdrasil.core.ledger.chain.ChainVerifier;
+import org.yggdrasil.core.ledger.chain.TransactionIndex;
+import org.yggdrasil.core.ledger.IndexerManager;
 import org.yggdrasil.core.ledger.Mempool;
+import org.yggdrasil.core.ledger.SignatureVerifier;
 import org.yggdrasil.core.ledger.exceptions.TransactionException;
 import org.yggdrasil.core.ledger.transaction.*;
 import org.yggdrasil.core.ledger.wallet.Wallet;
 import org.yggdrasil.core.ledger.wallet.WalletIndexer;
 import org.yggdrasil.core.utils.CryptoHasher;
 import org.yggdrasil.core.utils.CryptoKeyGenerator;
+import org.yggdrasil.core.utils.MerkleProof;
 import org.yggdrasil.core.api.controller.BlockchainController;
 import org.yggdrasil.node.network.Node;
 import org.openjdk.jol.info.GraphLayout;
@@ -37,7 +43,10 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -73,6 +82,10 @@ public class BlockchainService {
     @Autowired
     private Mempool mempool;
     @Autowired
+    private IndexerManager indexerManager;
+    @Autowired
+    private SignatureVerifier signatureVerifier;
+    @Autowired
     private WalletIndexer walletIndexer;
 
     @PostConstruct
@@ -92,11 +105,113 @@ public class BlockchainService {
      * @return
      */
     public Blockchain getBlockchain() {
-        // add some code so that the last # of blocks are retrieved
-        // and return to the caller.
         return this.blockchain;
     }
 
+    /**
+     * Returns the height of the main chain.
+     *
+     * @return chainHeight
+     */
+    public long getChainHeight() {
+        return this.blockchain.getChainHeight();
+    }
+
+    /**
+     * Returns the hash of the block at a height of the main chain.
+     *
+     * @param height
+     * @return blockHash
+     */
+    public Optional<byte[]> getBlockHashAtHeight(long height) {
+        return this.blockchain.getBlockHashAtHeight(height);
+    }
+
+    /**
+     * Iterate over the blocks of the main chain between two heights (both inclusive), in
+     * ascending order of height, reading each block as it is reached.
+     *
+     * @param fromHeight
+     * @param toHeight
+     * @return blocks
+     */
+    public Iterator<Block> iterateBlocks(long fromHeight, long toHeight) {
+        return this.blockchain.iterateBlockRange(fromHeight, toHeight);
+    }
+
+    public void invalidateBlock(byte[] blockHash) {
+        this.blockchain.invalidateBlock(blockHash);
+    }
+
+    public Map<String, Long> getCacheStats() {
+        return this.blockchain.getCacheStats();
+    }
+
+    public Map<String, Long> getCoinsCacheStats() {
+        return this.blockchain.getCoinsCacheStats();
+    }
+
+    /**
+     * Returns the balance of an address, empty if the address index is not enabled.
+     *
+     * @param address
+     * @return balance
+     */
+    public Optional<BigDecimal> getAddressBalance(byte[] address) {
+        return this.indexerManager.getIndexer(AddressIndex.class).map(index -> index.getBalance(address));
+    }
+
+    /**
+     * Returns a page of the balance changes of an address, newest first, empty if the address
+     * index is not enabled.
+     *
+     * @param address
+     * @param cursor
+     * @param limit
+     * @return history
+     */
+    public Optional<AddressIndex.History> getAddressHistory(byte[] address, byte[] cursor, int limit) {
+        return this.indexerManager.getIndexer(AddressIndex.class).map(index -> index.getHistory(address, cursor, limit));
+    }
+
+    /**
+     * Returns the height of the last block in the address index, -1 if it is not enabled.
+     *
+     * @return indexedHeight
+     */
+    public long getAddressIndexHeight() {
+        return this.indexerManager.getIndexedHeight("addressindex");
+    }
+
+    public Map<String, Map<String, Long>> getIndexerStats() {
+        return this.indexerManager.getStats();
+    }
+
+    public Map<String, Map<String, Long>> getSignatureCacheStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        stats.put("signatures", this.signatureVerifier.getCacheStats());
+        stats.put("publicKeys", CryptoKeyGenerator.getPublicKeyCacheStats());
+        stats.put("walletAddresses", CryptoHasher.getWalletAddressCacheStats());
+        return stats;
+    }
+
+    public Map<String, Long> getCompressionStats() {
+        return this.blockchain.getCompressionStats();
+    }
+
+    public Map<String, Long> getFilterStats() {
+        return this.mempool.getFilterStats();
+    }
+
+    public ChainVerifier.Result verifyChain(Long fromHeight, Long toHeight) {
+        return this.blockchain.verifyChain(fromHeight == null ? 0 : fromHeight,
+                toHeight == null ? this.blockchain.getChainHeight() : toHeight);
+    }
+
+    public Map<String, Long> getVerifyProgress() {
+        return this.blockchain.getVerifyProgress();
+    }
+
     public Optional<Block> getBlock(byte[] blockHash) {
         return this.blockchain.getBlock(blockHash);
     }
@@ -111,6 +226,33 @@ public class BlockchainService {
         return this.mempool.peekTransaction(numberOfTransactions);
     }
 
+    /**
+     * Looks up a confirmed transaction by its hash, using the transaction index.
+     *
+     * @param txnHash
+     * @return transaction
+     */
+    public Optional<Transaction> getConfirmedTransaction(byte[] txnHash) {
+        return this.blockchain.getTransaction(txnHash);
+    }
+
+    /**
+     * Returns the proof that a confirmed transaction is in a block. Without a block hash the
+     * block is looked up with the transaction index.
+     *
+     * @param txnHash
+     * @param blockHash the block holding the transaction, or null to look it up
+     * @return the block hash and the proof
+     */
+    public Optional<Pair<byte[], MerkleProof>> getMerkleProof(byte[] txnHash, byte[] blockHash) {
+        Optional<byte[]> containingBlock = blockHash != null ? Optional.of(blockHash)
+                : this.indexerManager.getIndexer(TransactionIndex.class)
+                    .flatMap(index -> index.getLocation(txnHash))
+                    .map(TransactionIndex.Location::getBlockHash);
+        return containingBlock.flatMap(hash -> this.blockchain.getMerkleProof(hash, txnHash)
+                .map(proof -> Pair.of(hash, proof)));
+    }
+
     /**
      * Adds a new transaction to execute on the blockchain.
      *
@@ -252,10 +394,7 @@ public class BlockchainService {
         this.walletIndexer.getCurrentWallet().signTxn(txn);
         logger.info("signing...");
         logger.info(String.valueOf(txn));
-        Signature ecdsaVerify = Signature.getInstance(CryptoKeyGenerator.getSignatureAlgorithm());
-        ecdsaVerify.initVerify(this.walletIndexer.getCurrentWallet().getPublicKey());
-        ecdsaVerify.update(txn.getTxnHash());
-        logger.info(String.valueOf(ecdsaVerify.verify(txn.getSignature())));
+        logger.info(String.valueOf(SignatureVerifier.verify(this.walletIndexer.getCurrentWallet().getPublicKey(), txn.getSigningHash(), txn.getSignature())));
         logger.info("done");
     }
 
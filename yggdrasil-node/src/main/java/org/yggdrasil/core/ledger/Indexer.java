@@ -0,0 +1,69 @@
+package org.yggdrasil.core.ledger;
+
+import org.mapdb.DB;
+import org.yggdrasil.core.ledger.chain.Block;
+
+/**
+ * An index built from the blocks of the main chain, run in the background by the
+ * {@link IndexerManager}. Any component implementing this interface is picked up by the
+ * manager, and is enabled with the `blockchain.index.<name>` property.
+ *
+ * The manager keeps the watermark of each indexer, the height and hash of the last block it
+ * has indexed, and calls the indexer with one block at a time from a single thread: blocks are
+ * indexed in ascending order of height, and when the main chain is reorganized they are
+ * unindexed in descending order back to the fork. A block may be indexed again after a
+ * restart, so indexing has to be idempotent.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public interface Indexer {
+
+    /**
+     * The name of the index, used for its property and its watermark.
+     *
+     * @return name
+     */
+    String getName();
+
+    /**
+     * Create or open the storage of the index in the chain database. Called once, before any
+     * other call, and only if the index is enabled or has to be cleared.
+     *
+     * @param database
+     */
+    void open(DB database);
+
+    /**
+     * Index the block at the given height of the main chain.
+     *
+     * @param block
+     * @param height
+     */
+    void indexBlock(Block block, long height);
+
+    /**
+     * Remove the block at the given height from the index, when it is disconnected from the
+     * main chain.
+     *
+     * @param block
+     * @param height
+     */
+    void unindexBlock(Block block, long height);
+
+    /**
+     * Remove everything from the index, so it is rebuilt from the start of the chain.
+     */
+    void clear();
+
+    /**
+     * Whether the index is built from the txns of the blocks, and so is not available when the
+     * node is pruned.
+     *
+     * @return requiresBlockBodies
+     */
+    default boolean requiresBlockBodies() {
+        return true;
+    }
+
+}
@@ -0,0 +1,346 @@
+package org.yggdrasil.core.ledger;
+
+import org.mapdb.DB;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.HTreeMap;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.yggdrasil.core.ledger.chain.Block;
+import org.yggdrasil.core.ledger.chain.Blockchain;
+import org.yggdrasil.core.ledger.chain.ChainListener;
+import org.yggdrasil.core.ledger.exceptions.BlockStoreException;
+import org.yggdrasil.core.utils.CryptoHasher;
+import org.yggdrasil.node.network.NodeConfig;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the enabled {@link Indexer}s in the background, so that adding a block to the chain
+ * does not wait on any of the indexes.
+ *
+ * Each indexer has its own watermark, the height and hash of the last block it has indexed,
+ * which is kept in the chain database alongside the index. An indexer first catches up with
+ * the chain from its watermark, reading the blocks from storage, and then follows the tip:
+ * the chain notifies the manager of each connected and disconnected block, and the indexer is
+ * scheduled on the manager's thread pool to work through the change. When the block at the
+ * watermark is no longer in the main chain, the indexer unindexes back to the fork before it
+ * moves forward again, so a reorganization (or a crash part way through one) never leaves
+ * blocks from a stale branch in an index.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+@Component
+public class IndexerManager implements ChainListener {
+
+    private final Logger logger = LoggerFactory.getLogger(IndexerManager.class);
+
+    // The number of threads the indexers are run on.
+    @Value("${blockchain.index.threads:2}")
+    private Integer _THREADS;
+    // The number of blocks an indexer works through in one run, before it lets the other indexers have the thread
+    private static final int _BATCH_SIZE = 1000;
+    private static final int _RECORD_VERSION = 1;
+
+    @Autowired
+    private Environment environment;
+    @Autowired
+    private NodeConfig nodeConfig;
+    @Autowired
+    private Blockchain blockchain;
+    @Autowired(required = false)
+    private List<Indexer> indexers = new ArrayList<>();
+
+    // The watermarks of the indexes, name -> (height, block hash)
+    private HTreeMap<String, byte[]> watermarks;
+    // The enabled indexes, by name
+    private final Map<String, Worker> workers = new LinkedHashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    private void init() {
+        DB database = this.blockchain.getDatabase();
+        this.watermarks = database
+                .hashMap("indexerState")
+                .keySerializer(Serializer.STRING)
+                .valueSerializer(Serializer.BYTE_ARRAY)
+                .createOrOpen();
+        for (Indexer indexer : this.indexers) {
+            String name = indexer.getName();
+            boolean enabled = this.environment.getProperty("blockchain.index." + name, Boolean.class, false);
+            if (enabled && indexer.requiresBlockBodies() && this.nodeConfig.isPruned()) {
+                logger.warn("The {} index is not available when running as a pruned node.", name);
+            } else if (enabled) {
+                indexer.open(database);
+                this.workers.put(name, new Worker(indexer, this.watermarks.get(name)));
+            } else if (this.watermarks.containsKey(name)) {
+                // The index was turned off, drop it so it is rebuilt from scratch if it is turned back on
+                indexer.open(database);
+                indexer.clear();
+                this.watermarks.remove(name);
+                logger.info("The {} index is disabled and has been cleared.", name);
+            }
+        }
+        this.blockchain.commitWrites();
+        if (this.workers.isEmpty()) {
+            return;
+        }
+        this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(_THREADS, this.workers.size())));
+        this.blockchain.addChainListener(this);
+        for (Worker worker : this.workers.values()) {
+            logger.info("The {} index is at height {} of {}.", worker.indexer.getName(), worker.height, this.blockchain.getChainHeight());
+            worker.schedule();
+        }
+    }
+
+    @PreDestroy
+    private void onDestroy() throws InterruptedException {
+        if (this.executor == null) {
+            return;
+        }
+        logger.info("Stopping the indexers.");
+        this.executor.shutdown();
+        if (!this.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void blockConnected(byte[] blockHash, long height) {
+        this.workers.values().forEach(Worker::schedule);
+    }
+
+    @Override
+    public void blockDisconnected(byte[] blockHash, long height) {
+        this.workers.values().forEach(Worker::schedule);
+    }
+
+    /**
+     * Returns an enabled indexer by its type, empty if it is not enabled.
+     *
+     * @param type
+     * @return indexer
+     */
+    public <T extends Indexer> Optional<T> getIndexer(Class<T> type) {
+        return this.workers.values().stream()
+                .map(worker -> worker.indexer)
+                .filter(type::isInstance)
+                .map(type::cast)
+                .findFirst();
+    }
+
+    /**
+     * Returns the height of the last block indexed by an indexer, -1 if it is not enabled.
+     *
+     * @param name
+     * @return indexedHeight
+     */
+    public long getIndexedHeight(String name) {
+        Worker worker = this.workers.get(name);
+        return worker == null ? -1 : worker.height;
+    }
+
+    /**
+     * Returns the progress of each enabled indexer, for reporting. The lag is the number of
+     * main chain blocks the indexer has yet to index.
+     *
+     * @return stats
+     */
+    public Map<String, Map<String, Long>> getStats() {
+        long chainHeight = this.blockchain.getChainHeight();
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        for (Worker worker : this.workers.values()) {
+            long height = worker.height;
+            long blocks = worker.blocksIndexed + worker.blocksUnindexed;
+            Map<String, Long> indexerStats = new LinkedHashMap<>();
+            indexerStats.put("indexedHeight", height);
+            indexerStats.put("chainHeight", chainHeight);
+            indexerStats.put("lag", Math.max(0, chainHeight - height));
+            indexerStats.put("blocksIndexed", worker.blocksIndexed);
+            indexerStats.put("blocksUnindexed", worker.blocksUnindexed);
+            indexerStats.put("lastBlockMicros", worker.lastBlockNanos / 1000);
+            indexerStats.put("averageBlockMicros", blocks == 0 ? 0 : worker.totalBlockNanos / blocks / 1000);
+            indexerStats.put("running", worker.scheduled.get() ? 1L : 0L);
+            stats.put(worker.indexer.getName(), indexerStats);
+        }
+        return stats;
+    }
+
+    private static byte[] encode(long height, byte[] blockHash) {
+        try {
+            DataOutput2 out = new DataOutput2();
+            out.writeByte(_RECORD_VERSION);
+            out.writeLong(height);
+            out.packInt(blockHash == null ? 0 : blockHash.length);
+            if (blockHash != null) {
+                out.write(blockHash);
+            }
+            return out.copyBytes();
+        } catch (IOException e) {
+            throw new BlockStoreException("Unable to store the indexer watermark.", e);
+        }
+    }
+
+    /**
+     * An enabled indexer, its watermark and its counters. A worker is only ever run on one
+     * thread at a time; the counters are written by that thread and read for reporting.
+     */
+    private final class Worker implements Runnable {
+
+        private final Indexer indexer;
+        // Whether the worker is queued or running on the thread pool
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Whether the chain has changed since the worker was last started
+        private final AtomicBoolean pending = new AtomicBoolean();
+        // The height of the last block indexed, -1 if none have been
+        private volatile long height;
+        // The hash of the last block indexed, null if none have been
+        private volatile byte[] blockHash;
+        private volatile long blocksIndexed;
+        private volatile long blocksUnindexed;
+        private volatile long lastBlockNanos;
+        private volatile long totalBlockNanos;
+        // Whether the index has caught up to the tip since the node started
+        private volatile boolean caughtUp;
+
+        private Worker(Indexer indexer, byte[] watermark) {
+            this.indexer = indexer;
+            this.height = -1;
+            if (watermark != null) {
+                try {
+                    DataInput2 in = new DataInput2.ByteArray(watermark);
+                    int version = in.readUnsignedByte();
+                    if (version != _RECORD_VERSION) {
+                        throw new BlockStoreException("Unsupported indexer watermark version: " + version);
+                    }
+                    this.height = in.readLong();
+                    byte[] hash = new byte[in.unpackInt()];
+                    in.readFully(hash);
+                    this.blockHash = hash.length == 0 ? null : hash;
+                } catch (IOException e) {
+                    throw new BlockStoreException("Unable to read the indexer watermark.", e);
+                }
+            }
+        }
+
+        // Queue the worker on the thread pool, unless it is already queued or running, in which
+        // case it runs again once it is done
+        private void schedule() {
+            this.pending.set(true);
+            if (this.scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    this.scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean more = false;
+            try {
+                this.pending.set(false);
+                more = this.sync();
+            } catch (Exception e) {
+                logger.error("There was an issue running the {} index: {}", this.indexer.getName(), e.getMessage());
+            } finally {
+                this.scheduled.set(false);
+            }
+            if (more || this.pending.get()) {
+                this.schedule();
+            }
+        }
+
+        // Move the index towards the tip of the main chain, one block at a time. Returns whether
+        // the batch ran out before the index reached the tip.
+        private boolean sync() {
+            long steps = 0;
+            try {
+                while (steps < _BATCH_SIZE && !Thread.currentThread().isInterrupted()) {
+                    if (this.height >= 0 && !Arrays.equals(blockchain.getBlockHashAtHeight(this.height).orElse(null), this.blockHash)) {
+                        // The last block indexed is no longer in the main chain, step back towards the fork
+                        Optional<Block> block = blockchain.readBlock(this.blockHash);
+                        if (block.isEmpty()) {
+                            logger.error("Block {} is missing, the {} index cannot be rolled back past it.",
+                                    CryptoHasher.humanReadableHash(this.blockHash), this.indexer.getName());
+                            break;
+                        }
+                        long start = System.nanoTime();
+                        this.indexer.unindexBlock(block.get(), this.height);
+                        this.blocksUnindexed++;
+                        this.recordTime(start);
+                        this.advance(this.height - 1, this.height == 0 ? null : block.get().getHeader().getPreviousBlockHash());
+                    } else {
+                        byte[] nextHash = blockchain.getBlockHashAtHeight(this.height + 1).orElse(null);
+                        if (nextHash == null) {
+                            break;
+                        }
+                        Optional<Block> block = blockchain.readBlock(nextHash);
+                        if (block.isEmpty()) {
+                            logger.warn("Block at height {} is missing, the {} index cannot catch up past it.", this.height + 1, this.indexer.getName());
+                            break;
+                        }
+                        if (this.height >= 0 && block.get().getHeader() != null
+                                && !Arrays.equals(block.get().getHeader().getPreviousBlockHash(), this.blockHash)) {
+                            // The chain is being reorganized, carry on once it is done
+                            break;
+                        }
+                        long start = System.nanoTime();
+                        this.indexer.indexBlock(block.get(), this.height + 1);
+                        this.blocksIndexed++;
+                        this.recordTime(start);
+                        this.advance(this.height + 1, nextHash);
+                    }
+                    steps++;
+                }
+            } finally {
+                if (steps > 0) {
+                    blockchain.recordIndexWrite();
+                }
+            }
+            if (steps < _BATCH_SIZE) {
+                // Only the first catch up is worth reporting, after that the index follows the tip
+                if (steps > 1 && !this.caughtUp) {
+                    logger.info("The {} index caught up to height {} of {}.", this.indexer.getName(), this.height, blockchain.getChainHeight());
+                } else if (steps > 1) {
+                    logger.debug("The {} index caught up to height {} of {}.", this.indexer.getName(), this.height, blockchain.getChainHeight());
+                }
+                this.caughtUp = true;
+            }
+            return steps >= _BATCH_SIZE;
+        }
+
+        private void advance(long height, byte[] blockHash) {
+            this.height = height;
+            this.blockHash = blockHash;
+            watermarks.put(this.indexer.getName(), encode(height, blockHash));
+        }
+
+        private void recordTime(long start) {
+            this.lastBlockNanos = System.nanoTime() - start;
+            this.totalBlockNanos += this.lastBlockNanos;
+        }
+
+    }
+
+}
@@ -2,14 +2,17 @@ package org.yggdrasil.core.ledger;
 
 import org.yggdrasil.core.ledger.transaction.Transaction;
 import org.yggdrasil.core.utils.CryptoHasher;
+import org.yggdrasil.core.utils.RollingBloomFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This component in the blockchain is used for temporary storage of transactions.
@@ -24,15 +27,28 @@ public class Mempool {
 
     private final Logger logger = LoggerFactory.getLogger(Mempool.class);
 
+    // The number of recently seen txn hashes remembered by the known txn filter.
+    @Value("${blockchain.filter.known-txns:100000}")
+    private Integer _KNOWN_TXNS;
+    // The false positive rate of the known txn filter.
+    @Value("${blockchain.filter.false-positive-rate:0.000001}")
+    private Double _FALSE_POSITIVE_RATE;
+
     private List<Transaction> transactionPool;
+    // Filter of the hashes of the txns in the mempool and the ones recently put into it, for
+    // answering that a txn has not been seen without scanning the pool.
+    private volatile RollingBloomFilter knownTxns;
 
     @PostConstruct
     private void init() {
         this.transactionPool = new ArrayList<>();
+        this.knownTxns = new RollingBloomFilter(_KNOWN_TXNS, _FALSE_POSITIVE_RATE);
     }
 
     public int size() {
-        return transactionPool.size();
+        synchronized (transactionPool) {
+            return transactionPool.size();
+        }
     }
 
     /**
@@ -42,7 +58,10 @@ public class Mempool {
      */
     public void putTransaction(Transaction transaction) {
         logger.trace("In putTransaction");
-        this.transactionPool.add(transaction);
+        synchronized (transactionPool) {
+            this.transactionPool.add(transaction);
+            this.rememberTransaction(transaction);
+        }
         logger.debug("New transaction added to the mempool: {}", transaction.toString());
     }
 
@@ -53,7 +72,10 @@ public class Mempool {
      */
     public void putAllTransaction(List<Transaction> transactions) {
         logger.trace("In putTransaction");
-        this.transactionPool.addAll(transactions);
+        synchronized (transactionPool) {
+            this.transactionPool.addAll(transactions);
+            transactions.forEach(this::rememberTransaction);
+        }
         logger.debug("{} transactions added to the mempool.", transactions.size());
     }
 
@@ -63,7 +85,9 @@ public class Mempool {
      * @return
      */
     public boolean hasNext() {
-        return this.transactionPool.size() > 0;
+        synchronized (transactionPool) {
+            return this.transactionPool.size() > 0;
+        }
     }
 
     /**
@@ -73,14 +97,16 @@ public class Mempool {
      */
     public Transaction getTransaction() {
         logger.trace("In getTransaction");
-        if(transactionPool.size() > 0) {
-            Transaction transaction = transactionPool.get(0);
-            transactionPool.remove(0);
-            logger.debug("Retrieved next transaction from the mempool: {}", transaction.toString());
-            return transaction;
-        } else {
-            logger.debug("Tried to get a transaction from an empty mempool.");
-            return null;
+        synchronized (transactionPool) {
+            if(transactionPool.size() > 0) {
+                Transaction transaction = transactionPool.get(0);
+                transactionPool.remove(0);
+                logger.debug("Retrieved next transaction from the mempool: {}", transaction.toString());
+                return transaction;
+            } else {
+                logger.debug("Tried to get a transaction from an empty mempool.");
+                return null;
+            }
         }
     }
 
@@ -92,15 +118,17 @@ public class Mempool {
      */
     public List<Transaction> getTransaction(int count) {
         logger.trace("In getTransaction");
-        if(transactionPool.size() < count) {
-            count = transactionPool.size();
-        }
-        List<Transaction> txns = new ArrayList<>();
-        for(int i = 0; i < count; i++) {
-            txns.add(transactionPool.get(0));
-            transactionPool.remove(0);
+        synchronized (transactionPool) {
+            if(transactionPool.size() < count) {
+                count = transactionPool.size();
+            }
+            List<Transaction> txns = new ArrayList<>();
+            for(int i = 0; i < count; i++) {
+                txns.add(transactionPool.get(0));
+                transactionPool.remove(0);
+            }
+            return txns;
         }
-        return txns;
     }
 
     /**
@@ -111,11 +139,13 @@ public class Mempool {
      */
     public Transaction getTransaction(byte[] txnHash){
         logger.trace("In getTransaction with transaction hash: {}", CryptoHasher.humanReadableHash(txnHash));
-        Transaction txn = transactionPool.stream().filter(mTxn -> mTxn.compareTxnHash(txnHash)).findFirst().orElse(null);
-        if(txn != null) {
-            transactionPool.remove(txn);
+        synchronized (transactionPool) {
+            Transaction txn = transactionPool.stream().filter(mTxn -> mTxn.compareTxnHash(txnHash)).findFirst().orElse(null);
+            if(txn != null) {
+                transactionPool.remove(txn);
+            }
+            return txn;
         }
-        return txn;
     }
 
     /**
@@ -128,20 +158,61 @@ public class Mempool {
     public List<Transaction> peekTransaction(int numberToPeek) throws NoSuchAlgorithmException {
         logger.trace("In peekTransaction");
         List<Transaction> peekedTxns = new ArrayList<>();
-        if(transactionPool.size() > 0) {
-            if(numberToPeek >= transactionPool.size()) {
-                numberToPeek = 0;
+        synchronized (transactionPool) {
+            if(transactionPool.size() > 0) {
+                if(numberToPeek >= transactionPool.size()) {
+                    numberToPeek = 0;
+                } else {
+                    numberToPeek = transactionPool.size() - numberToPeek;
+                }
+                for(int i = transactionPool.size()-1; i >= numberToPeek; i--){
+                    peekedTxns.add(transactionPool.get(i));
+                }
+                logger.debug("Retrieved {} transactions from the mempool", numberToPeek);
+                return peekedTxns;
             } else {
-                numberToPeek = transactionPool.size() - numberToPeek;
+                logger.debug("Tried to get a transaction from an empty mempool.");
+                return new ArrayList<>();
             }
-            for(int i = transactionPool.size()-1; i >= numberToPeek; i--){
-                peekedTxns.add(transactionPool.get(i));
+        }
+    }
+
+    /**
+     * Returns false if a txn is definitely not in the mempool (and has not been put into it
+     * recently), without scanning the pool. A true result may be a false positive, and still has
+     * to be checked with {@link #peekTransaction(byte[])}.
+     *
+     * @param txnHash
+     * @return mightContain
+     */
+    public boolean mightContain(byte[] txnHash) {
+        return this.knownTxns.mightContain(txnHash);
+    }
+
+    /**
+     * Returns the counters of the known txn filter, for reporting.
+     *
+     * @return stats
+     */
+    public Map<String, Long> getFilterStats() {
+        return this.knownTxns.getStats();
+    }
+
+    // Private function to add a txn to the known txn filter, called holding the pool. When the
+    // filter rolls over and forgets its oldest generation, the txns still in the pool are put back,
+    // so the filter never answers that a txn in the pool has not been seen. Putting back more txns
+    // than a generation holds would roll the filter over again and forget the first of them, so a
+    // pool that has outgrown the filter gets a larger filter instead.
+    private void rememberTransaction(Transaction transaction) {
+        if(this.knownTxns.insert(transaction.getTxnHash())) {
+            if(this.transactionPool.size() >= this.knownTxns.getGenerationSize()) {
+                int capacity = 4 * (this.transactionPool.size() + 1);
+                logger.info("Growing the known txn filter to {} txns for a mempool of {} txns.", capacity, this.transactionPool.size());
+                this.knownTxns = new RollingBloomFilter(capacity, _FALSE_POSITIVE_RATE);
+            }
+            for(Transaction txn : this.transactionPool) {
+                this.knownTxns.insert(txn.getTxnHash());
             }
-            logger.debug("Retrieved {} transactions from the mempool", numberToPeek);
-            return peekedTxns;
-        } else {
-            logger.debug("Tried to get a transaction from an empty mempool.");
-            return new ArrayList<>();
         }
     }
 
@@ -153,7 +224,9 @@ public class Mempool {
      */
     public Transaction peekTransaction(byte[] txnHash){
         logger.trace("In getTransaction with transaction hash: {}", CryptoHasher.humanReadableHash(txnHash));
-        return transactionPool.stream().filter(mTxn -> mTxn.compareTxnHash(txnHash)).findFirst().orElse(null);
+        synchronized (transactionPool) {
+            return transactionPool.stream().filter(mTxn -> mTxn.compareTxnHash(txnHash)).findFirst().orElse(null);
+        }
     }
 
 }
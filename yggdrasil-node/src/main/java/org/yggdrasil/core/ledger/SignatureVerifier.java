@@ -0,0 +1,348 @@
+package org.yggdrasil.core.ledger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.yggdrasil.core.ledger.transaction.Transaction;
+import org.yggdrasil.core.utils.CryptoHasher;
+import org.yggdrasil.core.utils.CryptoKeyGenerator;
+import org.yggdrasil.core.utils.SegmentedLruCache;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * Verifies batches of signatures on a pool of threads, so that checking the signatures of a
+ * block or of a batch of mempool txns is spread across the cores rather than done one at a
+ * time. Each thread keeps its own {@link Signature}, since a signature object can not be
+ * shared between threads and looking one up for every check is slow.
+ *
+ * A batch is split into chunks that are verified in parallel. The result is a bitmap of the
+ * signatures that checked out; when the batch is submitted to abort on the first failure, the
+ * remaining chunks stop as soon as any signature fails, and only whether the batch as a whole
+ * is valid is meaningful. Batches too small to be worth splitting are verified on the calling
+ * thread.
+ *
+ * The same txn is checked when it is admitted to the mempool, when it is mined and when the
+ * block holding it arrives from a peer, so the batches keep a cache of the signatures that have
+ * checked out, keyed by a salted hash of the key, message and signature. Only valid signatures
+ * are cached, so a bad signature can not push good ones out by being sent repeatedly.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+@Component
+public class SignatureVerifier {
+
+    private final Logger logger = LoggerFactory.getLogger(SignatureVerifier.class);
+
+    // The number of threads signatures are verified on, 0 for one per core
+    @Value("${blockchain.verify.signature-threads:0}")
+    private Integer _THREADS;
+    // The fewest signatures verified by a single task, smaller batches are verified on the calling thread
+    private static final int _MIN_CHUNK_SIZE = 8;
+    // The number of chunks a batch is split into for each thread, so that uneven chunks even out
+    private static final int _CHUNKS_PER_THREAD = 4;
+    // The number of verified signatures cached, 0 to not cache them
+    @Value("${blockchain.verify.signature-cache-entries:100000}")
+    private Integer _CACHE_ENTRIES;
+    // The estimated size (in bytes) of a cached signature
+    private static final int _CACHE_ENTRY_BYTES = 64;
+    private static final int _SALT_LENGTH = 16;
+    // The signature of each thread, reused for every check made on the thread
+    private static final ThreadLocal<Signature> _SIGNATURE = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance(CryptoKeyGenerator.getSignatureAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The " + CryptoKeyGenerator.getSignatureAlgorithm() + " signature is not available.", e);
+        }
+    });
+
+    private ExecutorService executor;
+    private int threads;
+    // The hashes of the signatures that checked out, null when caching is off
+    private SegmentedLruCache<ByteBuffer, Boolean> verified;
+    // Salts the cache keys, so the keys can not be predicted by peers
+    private final byte[] salt = new byte[_SALT_LENGTH];
+
+    @PostConstruct
+    private void init() {
+        this.threads = (_THREADS == null || _THREADS <= 0) ? Runtime.getRuntime().availableProcessors() : _THREADS;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "signature-verifier-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (_CACHE_ENTRIES != null && _CACHE_ENTRIES > 0) {
+            new SecureRandom().nextBytes(this.salt);
+            this.verified = new SegmentedLruCache<>(_CACHE_ENTRIES, (long) _CACHE_ENTRIES * _CACHE_ENTRY_BYTES, valid -> _CACHE_ENTRY_BYTES);
+        }
+        logger.info("Verifying signatures on {} threads.", this.threads);
+    }
+
+    @PreDestroy
+    private void onDestroy() throws InterruptedException {
+        this.executor.shutdown();
+        if (!this.executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verify a signature on the calling thread.
+     *
+     * @param publicKey
+     * @param message
+     * @param signature
+     * @return isValid, false when the key or signature is missing or malformed
+     */
+    public static boolean verify(PublicKey publicKey, byte[] message, byte[] signature) {
+        if (publicKey == null || message == null || signature == null) {
+            return false;
+        }
+        Signature verifier = _SIGNATURE.get();
+        try {
+            verifier.initVerify(publicKey);
+            verifier.update(message);
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Verify the signature of a txn, signed by its origin over its signing hash, on the calling
+     * thread. Coinbase txns have no origin and are not signed, so they are always valid.
+     *
+     * @param txn
+     * @return isValid
+     */
+    public static boolean verify(Transaction txn) {
+        if (txn.isCoinbase()) {
+            return true;
+        }
+        try {
+            return verify(txn.getOrigin(), txn.getSigningHash(), txn.getSignature());
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the counters of the verified signature cache, for reporting.
+     *
+     * @return stats
+     */
+    public Map<String, Long> getCacheStats() {
+        return this.verified == null ? Collections.emptyMap() : this.verified.getStats();
+    }
+
+    /**
+     * Verify a batch of signatures on the pool.
+     *
+     * @param jobs
+     * @param abortOnFailure whether to stop at the first signature that fails
+     * @return result, completed once the batch is verified
+     */
+    public CompletableFuture<Result> submit(List<Job> jobs, boolean abortOnFailure) {
+        return this.submit(jobs.size(), i -> {
+            Job job = jobs.get(i);
+            return this.verifyCached(job.publicKey, job.message, job.signature);
+        }, abortOnFailure);
+    }
+
+    /**
+     * Verify the signatures of a batch of txns on the pool, the signing hash of each txn being
+     * computed on the pool as well. Coinbase txns are always valid.
+     *
+     * @param txns
+     * @param abortOnFailure whether to stop at the first txn that fails
+     * @return result, completed once the batch is verified
+     */
+    public CompletableFuture<Result> submitTransactions(List<Transaction> txns, boolean abortOnFailure) {
+        return this.submit(txns.size(), i -> this.verifyCached(txns.get(i)), abortOnFailure);
+    }
+
+    // Private function to verify the signature of a txn, using the cache
+    private boolean verifyCached(Transaction txn) {
+        if (txn.isCoinbase()) {
+            return true;
+        }
+        try {
+            return this.verifyCached(txn.getOrigin(), txn.getSigningHash(), txn.getSignature());
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    // Private function to verify a signature, skipping the check if it has checked out before
+    private boolean verifyCached(PublicKey publicKey, byte[] message, byte[] signature) {
+        if (this.verified == null || publicKey == null || message == null || signature == null) {
+            return verify(publicKey, message, signature);
+        }
+        byte[] encodedKey = publicKey.getEncoded();
+        ByteBuffer entry = ByteBuffer.allocate(_SALT_LENGTH + 3 * Integer.BYTES + encodedKey.length + message.length + signature.length)
+                .put(this.salt)
+                .putInt(encodedKey.length).put(encodedKey)
+                .putInt(message.length).put(message)
+                .putInt(signature.length).put(signature);
+        entry.flip();
+        ByteBuffer cacheKey = ByteBuffer.wrap(CryptoHasher.shash(entry));
+        if (this.verified.get(cacheKey) != null) {
+            return true;
+        }
+        boolean isValid = verify(publicKey, message, signature);
+        if (isValid) {
+            this.verified.put(cacheKey, Boolean.TRUE);
+        }
+        return isValid;
+    }
+
+    // Private function to split a batch into chunks and verify them on the pool
+    private CompletableFuture<Result> submit(int count, IntPredicate check, boolean abortOnFailure) {
+        boolean[] valid = new boolean[count];
+        AtomicBoolean failed = new AtomicBoolean();
+        AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+        if (count <= _MIN_CHUNK_SIZE || this.threads <= 1) {
+            verifyChunk(check, valid, 0, count, abortOnFailure, failed, firstFailure);
+            return CompletableFuture.completedFuture(new Result(valid, firstFailure.get()));
+        }
+        int chunkSize = Math.max(_MIN_CHUNK_SIZE, (count + this.threads * _CHUNKS_PER_THREAD - 1) / (this.threads * _CHUNKS_PER_THREAD));
+        CompletableFuture<?>[] chunks = new CompletableFuture<?>[(count + chunkSize - 1) / chunkSize];
+        for (int c = 0; c < chunks.length; c++) {
+            int from = c * chunkSize;
+            int to = Math.min(from + chunkSize, count);
+            chunks[c] = CompletableFuture.runAsync(() -> verifyChunk(check, valid, from, to, abortOnFailure, failed, firstFailure), this.executor);
+        }
+        return CompletableFuture.allOf(chunks).thenApply(done -> new Result(valid, firstFailure.get()));
+    }
+
+    // Private function to verify a range of a batch, stopping early once any chunk of the batch has
+    // failed when the batch aborts on failure
+    private static void verifyChunk(IntPredicate check, boolean[] valid, int from, int to, boolean abortOnFailure,
+                                    AtomicBoolean failed, AtomicInteger firstFailure) {
+        for (int i = from; i < to; i++) {
+            if (abortOnFailure && failed.get()) {
+                return;
+            }
+            boolean isValid;
+            try {
+                isValid = check.test(i);
+            } catch (RuntimeException e) {
+                isValid = false;
+            }
+            valid[i] = isValid;
+            if (!isValid) {
+                failed.set(true);
+                firstFailure.accumulateAndGet(i, Math::min);
+            }
+        }
+    }
+
+    /**
+     * A signature to verify: the key it was made with, the message that was signed and the
+     * signature itself.
+     */
+    public static final class Job {
+
+        private final PublicKey publicKey;
+        private final byte[] message;
+        private final byte[] signature;
+
+        public Job(PublicKey publicKey, byte[] message, byte[] signature) {
+            this.publicKey = publicKey;
+            this.message = message;
+            this.signature = signature;
+        }
+
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+
+        public byte[] getMessage() {
+            return message;
+        }
+
+        public byte[] getSignature() {
+            return signature;
+        }
+
+    }
+
+    /**
+     * The outcome of verifying a batch.
+     */
+    public static final class Result {
+
+        // The signatures that checked out, by position in the batch
+        private final BitSet valid;
+        // The number of signatures in the batch
+        private final int count;
+        // The lowest position of a signature seen to fail, -1 if none failed
+        private final int firstFailure;
+
+        private Result(boolean[] valid, int firstFailure) {
+            this.valid = new BitSet(valid.length);
+            for (int i = 0; i < valid.length; i++) {
+                if (valid[i]) {
+                    this.valid.set(i);
+                }
+            }
+            this.count = valid.length;
+            this.firstFailure = firstFailure == Integer.MAX_VALUE ? -1 : firstFailure;
+        }
+
+        /**
+         * Returns whether every signature in the batch checked out.
+         *
+         * @return isValid
+         */
+        public boolean isValid() {
+            return this.firstFailure < 0;
+        }
+
+        /**
+         * Returns whether the signature at a position checked out. For a batch that aborted on
+         * failure, signatures that were never checked are not valid.
+         *
+         * @param index
+         * @return isValid
+         */
+        public boolean isValid(int index) {
+            return this.valid.get(index);
+        }
+
+        public BitSet getValid() {
+            return (BitSet) this.valid.clone();
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getFirstFailure() {
+            return firstFailure;
+        }
+
+    }
+
+}
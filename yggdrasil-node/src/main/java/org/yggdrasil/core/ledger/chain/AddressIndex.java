@@ -0,0 +1,324 @@
+package org.yggdrasil.core.ledger.chain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.HTreeMap;
+import org.mapdb.Serializer;
+import org.springframework.stereotype.Component;
+import org.yggdrasil.core.ledger.Indexer;
+import org.yggdrasil.core.ledger.exceptions.BlockStoreException;
+import org.yggdrasil.core.ledger.transaction.Transaction;
+import org.yggdrasil.core.ledger.transaction.TransactionInput;
+import org.yggdrasil.core.ledger.transaction.TransactionOutput;
+import org.yggdrasil.core.serialization.HashSerializer;
+import org.yggdrasil.core.utils.CryptoHasher;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * The address index records every change to the balance of an address in the main chain: a
+ * credit for each output paid to the address, and a debit for each input the address spends.
+ * Entries are keyed by the address, the height of the block, the hash of the txn and the
+ * position of the output or input, so the history of an address is a range scan of the index
+ * in order of height. The current balance of each address is kept alongside the entries, so
+ * it is a single lookup.
+ *
+ * The index is run by the {@link org.yggdrasil.core.ledger.IndexerManager}, and is enabled
+ * with the `blockchain.index.addressindex` property.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+@Component
+public class AddressIndex implements Indexer {
+
+    private static final int _RECORD_VERSION = 1;
+    // Marks whether an entry key is for an output paid to the address, or an input it spends
+    private static final byte _CREDIT = 0;
+    private static final byte _DEBIT = 1;
+
+    // The balance changes, (address, height, txn hash, credit / debit, position) -> delta
+    private BTreeMap<byte[], byte[]> entries;
+    // The current balances, address -> balance
+    private HTreeMap<byte[], byte[]> balances;
+
+    @Override
+    public String getName() {
+        return "addressindex";
+    }
+
+    @Override
+    public void open(DB database) {
+        this.entries = database
+                .treeMap("addressIndex")
+                .keySerializer(Serializer.BYTE_ARRAY)
+                .valueSerializer(Serializer.BYTE_ARRAY)
+                .createOrOpen();
+        this.balances = database
+                .hashMap("addressBalance")
+                .keySerializer(Serializer.BYTE_ARRAY)
+                .valueSerializer(Serializer.BYTE_ARRAY)
+                .createOrOpen();
+    }
+
+    public long size() {
+        return this.entries.sizeLong();
+    }
+
+    /**
+     * Index the outputs and inputs of the txns of the block at the given height.
+     *
+     * @param block
+     * @param height
+     */
+    @Override
+    public void indexBlock(Block block, long height) {
+        if (block.getData() != null) {
+            for (Transaction txn : block.getData()) {
+                TransactionOutput[] txnOuts = txn.getTxnOutPuts();
+                for (int i = 0; txnOuts != null && i < txnOuts.length; i++) {
+                    this.addEntry(txnOuts[i].getAddress(), height, txn.getTxnHash(), _CREDIT, i, txnOuts[i].getValue());
+                }
+                byte[] spendingAddress = getSpendingAddress(txn);
+                TransactionInput[] txnIns = txn.getTxnInputs();
+                for (int i = 0; !txn.isCoinbase() && spendingAddress != null && txnIns != null && i < txnIns.length; i++) {
+                    if (txnIns[i].getTxnOutPt() != null && txnIns[i].getTxnOutPt().getValue() != null) {
+                        this.addEntry(spendingAddress, height, txn.getTxnHash(), _DEBIT, i, txnIns[i].getTxnOutPt().getValue().negate());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the outputs and inputs of the block at the given height from the index, when the
+     * block is disconnected from the main chain.
+     *
+     * @param block
+     * @param height
+     */
+    @Override
+    public void unindexBlock(Block block, long height) {
+        if (block.getData() != null) {
+            for (Transaction txn : block.getData()) {
+                TransactionOutput[] txnOuts = txn.getTxnOutPuts();
+                for (int i = 0; txnOuts != null && i < txnOuts.length; i++) {
+                    this.removeEntry(txnOuts[i].getAddress(), height, txn.getTxnHash(), _CREDIT, i);
+                }
+                byte[] spendingAddress = getSpendingAddress(txn);
+                TransactionInput[] txnIns = txn.getTxnInputs();
+                for (int i = 0; spendingAddress != null && txnIns != null && i < txnIns.length; i++) {
+                    this.removeEntry(spendingAddress, height, txn.getTxnHash(), _DEBIT, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the balance of an address, as of the last indexed block.
+     *
+     * @param address
+     * @return balance
+     */
+    public BigDecimal getBalance(byte[] address) {
+        byte[] balance = this.balances.get(address);
+        return balance == null ? BigDecimal.ZERO : decode(balance);
+    }
+
+    /**
+     * Returns a page of the balance changes of an address, newest first.
+     *
+     * @param address
+     * @param cursor the cursor returned with the previous page, or null for the first page
+     * @param limit
+     * @return history
+     */
+    public History getHistory(byte[] address, byte[] cursor, int limit) {
+        if (cursor != null && (cursor.length <= address.length || !Arrays.equals(cursor, 0, address.length, address, 0, address.length))) {
+            throw new IllegalArgumentException("The cursor is not for this address.");
+        }
+        NavigableMap<byte[], byte[]> addressEntries = this.entries.prefixSubMap(address).descendingMap();
+        if (cursor != null) {
+            addressEntries = addressEntries.tailMap(cursor, false);
+        }
+        List<Entry> page = new ArrayList<>();
+        Iterator<Map.Entry<byte[], byte[]>> iterator = addressEntries.entrySet().iterator();
+        while (page.size() < limit && iterator.hasNext()) {
+            Map.Entry<byte[], byte[]> entry = iterator.next();
+            page.add(new Entry(entry.getKey(), address.length, decode(entry.getValue())));
+        }
+        return new History(page, iterator.hasNext() ? page.get(page.size() - 1).key : null);
+    }
+
+    @Override
+    public void clear() {
+        this.entries.clear();
+        this.balances.clear();
+    }
+
+    private void addEntry(byte[] address, long height, byte[] txnHash, byte type, int position, BigDecimal delta) {
+        if (address == null || delta == null) {
+            return;
+        }
+        byte[] key = entryKey(address, height, txnHash, type, position);
+        // A block indexed again after a failed write replaces its entries rather than counting them twice
+        byte[] previous = this.entries.put(key, encode(delta));
+        this.updateBalance(address, previous == null ? delta : delta.subtract(decode(previous)));
+    }
+
+    private void removeEntry(byte[] address, long height, byte[] txnHash, byte type, int position) {
+        if (address == null) {
+            return;
+        }
+        byte[] removed = this.entries.remove(entryKey(address, height, txnHash, type, position));
+        if (removed != null) {
+            this.updateBalance(address, decode(removed).negate());
+        }
+    }
+
+    private void updateBalance(byte[] address, BigDecimal delta) {
+        BigDecimal balance = this.getBalance(address).add(delta);
+        if (balance.signum() == 0 && this.entries.prefixSubMap(address).isEmpty()) {
+            this.balances.remove(address);
+        } else {
+            this.balances.put(address, encode(balance));
+        }
+    }
+
+    // The address of the wallet spending the txn's inputs
+    private static byte[] getSpendingAddress(Transaction txn) {
+        return txn.getOriginAddress() == null ? null : CryptoHasher.hashByteArray(txn.getOriginAddress());
+    }
+
+    private static byte[] entryKey(byte[] address, long height, byte[] txnHash, byte type, int position) {
+        return ByteBuffer.allocate(address.length + Long.BYTES + txnHash.length + 1 + Integer.BYTES)
+                .put(address)
+                .putLong(height)
+                .put(txnHash)
+                .put(type)
+                .putInt(position)
+                .array();
+    }
+
+    private static byte[] encode(BigDecimal value) {
+        try {
+            DataOutput2 out = new DataOutput2();
+            out.writeByte(_RECORD_VERSION);
+            out.packInt(value.scale() + 1);
+            byte[] unscaled = value.unscaledValue().toByteArray();
+            out.packInt(unscaled.length);
+            out.write(unscaled);
+            return out.copyBytes();
+        } catch (IOException e) {
+            throw new BlockStoreException("Unable to store the address index record.", e);
+        }
+    }
+
+    private static BigDecimal decode(byte[] record) {
+        try {
+            DataInput2 in = new DataInput2.ByteArray(record);
+            int version = in.readUnsignedByte();
+            if (version != _RECORD_VERSION) {
+                throw new BlockStoreException("Unsupported address index record version: " + version);
+            }
+            int scale = in.unpackInt() - 1;
+            byte[] unscaled = new byte[in.unpackInt()];
+            in.readFully(unscaled);
+            return new BigDecimal(new BigInteger(unscaled), scale);
+        } catch (IOException e) {
+            throw new BlockStoreException("Unable to read the address index record.", e);
+        }
+    }
+
+    /**
+     * A change to the balance of an address: a credit of an output paid to it, or a debit of an
+     * input it spent.
+     */
+    public static final class Entry {
+
+        private final byte[] key;
+        private final long height;
+        private final byte[] txnHash;
+        private final boolean credit;
+        private final int position;
+        private final BigDecimal delta;
+
+        private Entry(byte[] key, int addressLength, BigDecimal delta) {
+            ByteBuffer buffer = ByteBuffer.wrap(key, addressLength, key.length - addressLength);
+            this.key = key;
+            this.height = buffer.getLong();
+            this.txnHash = new byte[key.length - addressLength - Long.BYTES - 1 - Integer.BYTES];
+            buffer.get(this.txnHash);
+            this.credit = buffer.get() == _CREDIT;
+            this.position = buffer.getInt();
+            this.delta = delta;
+        }
+
+        public long getHeight() {
+            return height;
+        }
+
+        @JsonSerialize(using = HashSerializer.class)
+        public byte[] getTxnHash() {
+            return txnHash;
+        }
+
+        public boolean isCredit() {
+            return credit;
+        }
+
+        // The position of the output for a credit, or of the input for a debit
+        public int getPosition() {
+            return position;
+        }
+
+        public BigDecimal getDelta() {
+            return delta;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("AddressEntry(height=%d, txn=%s, %s=%d, delta=%s)", height,
+                    CryptoHasher.humanReadableHash(txnHash), credit ? "output" : "input", position, delta.toPlainString());
+        }
+
+    }
+
+    /**
+     * A page of the history of an address, and the cursor of the next page.
+     */
+    public static final class History {
+
+        private final List<Entry> entries;
+        private final byte[] nextCursor;
+
+        private History(List<Entry> entries, byte[] nextCursor) {
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        @JsonIgnore
+        public byte[] getNextCursor() {
+            return nextCursor == null ? null : Arrays.copyOf(nextCursor, nextCursor.length);
+        }
+
+    }
+
+}
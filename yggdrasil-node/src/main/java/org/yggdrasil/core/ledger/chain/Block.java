@@ -56,7 +56,8 @@ public final class Block {
         this.header = builder.header;
         this.blockHeight = builder.blockHeight;
         this.data = builder.data;
-        this.blockHash = CryptoHasher.hash(this.header);
+        // Blocks read back from storage already carry their hash, so there is no need to compute it again
+        this.blockHash = builder.blockHash != null ? builder.blockHash : CryptoHasher.hash(this.header);
     }
 
     /**
@@ -222,6 +223,11 @@ public final class Block {
             return this;
         }
 
+        public Builder setBlockHash(byte[] blockHash) {
+            this.blockHash = blockHash;
+            return this;
+        }
+
         public Block build() throws NoSuchAlgorithmException {
             return new Block(this);
         }
@@ -0,0 +1,92 @@
+package org.yggdrasil.core.ledger.chain;
+
+import java.math.BigInteger;
+
+/**
+ * A node in the block index tree. Every known block has a node that points to the node of
+ * its previous block, along with the block's height, the cumulative work of the branch up to
+ * and including the block, its timestamp and its validation status.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class BlockIndexNode {
+
+    public enum Status {
+        // Only the header is known, the block itself has not been stored
+        HEADER_VALID,
+        // The full block has been stored
+        DATA_STORED,
+        // The block (or one of its ancestors) failed validation
+        FAILED
+    }
+
+    private final byte[] blockHash;
+    private final byte[] previousBlockHash;
+    private BlockIndexNode parent;
+    private final long height;
+    private final BigInteger cumulativeWork;
+    private final long epochTime;
+    private Status status;
+
+    protected BlockIndexNode(byte[] blockHash, byte[] previousBlockHash, long height, BigInteger cumulativeWork, long epochTime, Status status) {
+        this.blockHash = blockHash;
+        this.previousBlockHash = previousBlockHash;
+        this.height = height;
+        this.cumulativeWork = cumulativeWork;
+        this.epochTime = epochTime;
+        this.status = status;
+    }
+
+    public byte[] getBlockHash() {
+        return blockHash;
+    }
+
+    public byte[] getPreviousBlockHash() {
+        return previousBlockHash;
+    }
+
+    public BlockIndexNode getParent() {
+        return parent;
+    }
+
+    protected void setParent(BlockIndexNode parent) {
+        this.parent = parent;
+    }
+
+    public long getHeight() {
+        return height;
+    }
+
+    public BigInteger getCumulativeWork() {
+        return cumulativeWork;
+    }
+
+    public long getEpochTime() {
+        return epochTime;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    protected void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * Returns the ancestor of this node at the given height, or null if the height is
+     * above this node.
+     *
+     * @param height
+     * @return ancestor
+     */
+    public BlockIndexNode getAncestor(long height) {
+        BlockIndexNode node = this;
+        while (node != null && node.height > height) {
+            node = node.parent;
+        }
+        return node;
+    }
+
+}
@@ -7,13 +7,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.yggdrasil.core.ledger.Mempool;
+import org.yggdrasil.core.ledger.SignatureVerifier;
 import org.yggdrasil.core.ledger.transaction.Transaction;
 import org.yggdrasil.core.ledger.transaction.TransactionInput;
 import org.yggdrasil.core.ledger.transaction.TransactionOutPoint;
 import org.yggdrasil.core.ledger.transaction.TransactionOutput;
 import org.yggdrasil.core.ledger.wallet.WalletIndexer;
 import org.yggdrasil.core.utils.CryptoHasher;
-import org.yggdrasil.core.utils.CryptoKeyGenerator;
 import org.yggdrasil.core.utils.DateTimeUtil;
 import org.yggdrasil.node.network.NodeConfig;
 import org.yggdrasil.node.network.messages.Message;
@@ -26,8 +26,7 @@ import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
-import java.security.NoSuchAlgorithmException;
-import java.security.Signature;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -48,15 +47,15 @@ public class BlockMine {
     private Blockchain blockchain;
     @Autowired
     private WalletIndexer walletIndexer;
+    @Autowired
+    private SignatureVerifier signatureVerifier;
 
-    private Signature signatureVerification;
     private Thread miningThread;
     protected boolean isMiningState = false;
 
     @PostConstruct
-    private void init() throws NoSuchAlgorithmException {
+    private void init() {
         this.isMiningState = false;
-        this.signatureVerification = Signature.getInstance(CryptoKeyGenerator.getSignatureAlgorithm());
     }
 
     public void startMining() {
@@ -103,59 +102,45 @@ public class BlockMine {
         List<TransactionPayload> txnMessagePayloads = new ArrayList<>();
         List<Transaction> bTxnsInvalid = new ArrayList<>();
         logger.info("Validating block candidates");
-        for(Transaction txn : bTxnCandidates) {
+        // Check the signatures of every candidate at once, spread across the verifier's threads
+        List<Transaction> candidates = new ArrayList<>(bTxnCandidates);
+        SignatureVerifier.Result signatures = this.signatureVerifier.submitTransactions(candidates, false).get();
+        // The outputs spent by the txns accepted so far, so that two txns can not spend the same output
+        Set<ByteBuffer> spentCoins = new HashSet<>();
+        for(int i = 0; i < candidates.size(); i++) {
+            Transaction txn = candidates.get(i);
             boolean txnIsValid = false;
             // Validate every txn
             if(txn.isCoinbase()) {
                 logger.info("Txn: {} is invalid, was free-floating coinbase.", txn);
                 bTxnsInvalid.add(txn);
                 txnIsValid = false;
+            } else if(!signatures.isValid(i)) {
+                logger.info("Txn: {} is invalid, signature does not match its origin.", txn);
+                txnIsValid = false;
             } else {
                 // "Holy IF statements batman!" ~ Robin.
-
-                // Uncomment this once the wallet is finished being coded...
-                // this is commented for testing purposes.
-
-                /*
-                for (TransactionInput txnIn : txn.getTxnInputs()) {
-                    TransactionOutPoint txnOutPt = txnIn.getTxnOutPt();
-                    if(txnOutPt != null) {
-                        Optional<Block> prevBlock = this.blockchain.getBlock(txnOutPt.getTxnHash());
-                        if (prevBlock.isPresent()) {
-                            Optional<Transaction> prevTxn = prevBlock.get().getTransaction(txnOutPt.getTxnHash());
-                            if (prevTxn.isPresent()) {
-                                if (CryptoHasher.isEqualHashes(CryptoHasher.hashByteArray(prevTxn.get().getDestinationAddress()), CryptoHasher.hashByteArray(txn.getOriginAddress()))) {
-                                    if (CryptoHasher.isEqualHashes(CryptoHasher.hashByteArray(prevTxn.get().getDestinationAddress()), CryptoHasher.generateWalletAddress(txn.getOrigin()))) {
-                                        for (TransactionOutput txnOut : prevTxn.get().getTxnOutPuts()) {
-                                            if (txnOut.isMine(txn.getOrigin(), txn.getSignature())) {
-                                                if (txnOut.getValue().compareTo(txnOutPt.getValue()) == 0) {
-                                                    signatureVerification.initVerify(txn.getOrigin());
-                                                    if (signatureVerification.verify(txn.getSignature())) {
-                                                        logger.info("Txn: {} is valid.", txn);
-                                                        txnIsValid = true;
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            } else {
-                                logger.info("Txn: {} is invalid, prevTxn == null", txn);
-                                txnIsValid = false;
-                                break;
-                            }
-                        } else {
-                            logger.info("Txn: {} is invalid, prevBlock == null", txn);
-                            txnIsValid = false;
-                            break;
-                        }
-                    } else {
-                        logger.info("Txn: {} is invalid, txnOutPt == null", txn);
+                txnIsValid = txn.getTxnInputs() != null && txn.getTxnInputs().length > 0;
+                List<ByteBuffer> txnCoins = new ArrayList<>();
+                for (TransactionInput txnIn : txnIsValid ? txn.getTxnInputs() : new TransactionInput[0]) {
+                    // Each input has to spend an output that is still in the UTXO set and paid to the origin,
+                    // and that no other txn of this block spends
+                    Optional<byte[]> coinKey = this.blockchain.getUtxoSet().findCoin(txnIn.getTxnOutPt(), CryptoHasher.hashByteArray(txn.getOriginAddress()));
+                    if (coinKey.isEmpty() || spentCoins.contains(ByteBuffer.wrap(coinKey.get())) || txnCoins.contains(ByteBuffer.wrap(coinKey.get()))) {
+                        logger.info("Txn: {} is invalid, spends an output that is not unspent.", txn);
+                        txnIsValid = false;
+                        break;
+                    }
+                    if (!CryptoHasher.isEqualHashes(CryptoHasher.hashByteArray(txn.getOriginAddress()), CryptoHasher.generateWalletAddress(txn.getOrigin()))) {
+                        logger.info("Txn: {} is invalid, origin does not match its public key.", txn);
                         txnIsValid = false;
                         break;
                     }
-                }*/
-                txnIsValid = true;
+                    txnCoins.add(ByteBuffer.wrap(coinKey.get()));
+                }
+                if (txnIsValid) {
+                    spentCoins.addAll(txnCoins);
+                }
             }
             if(txnIsValid) {
                 logger.info("Txn: {} is valid.", txn);
@@ -185,7 +170,8 @@ public class BlockMine {
         // Merkle root variable for including in the block
         // as part of generating the merkleRoot, find a way to add merkle branch
         // to each txn to connect it back to the block
-        byte[] merkleRoot = CryptoHasher.generateMerkleTree(new ArrayList<>(bTxnCandidates));
+        List<Transaction> blockTxns = new ArrayList<>(bTxnCandidates);
+        byte[] merkleRoot = CryptoHasher.generateMerkleTree(blockTxns);
         // Compile the block
         BlockHeader header = BlockHeader.Builder.builder()
                 .setVersion(Blockchain._VERSION)
@@ -197,7 +183,7 @@ public class BlockMine {
                 .build();
         Block newBlock = Block.Builder.builder()
                 .setBlockHeader(header)
-                .setData(new ArrayList<>(bTxnCandidates))
+                .setData(blockTxns)
                 .build();
         // Perform the proof of work
         newBlock = this.proofOfWork(newBlock, lastBlock.getHeader().getDiff());
@@ -0,0 +1,102 @@
+package org.yggdrasil.core.ledger.chain;
+
+import java.util.Optional;
+
+/**
+ * The block store is the archival, on-disk storage for blocks. Blocks are keyed by
+ * their block hash. The blockchain chooses which implementation backs its archive
+ * through the storage engine configuration.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public interface BlockStore {
+
+    /**
+     * Write a block to the store.
+     *
+     * @param blockHash
+     * @param block
+     */
+    void putBlock(byte[] blockHash, Block block);
+
+    /**
+     * Read a block from the store, indexed by block hash.
+     *
+     * @param blockHash
+     * @return block
+     */
+    Optional<Block> getBlock(byte[] blockHash);
+
+    /**
+     * Check if a block is present in the store without reading it.
+     *
+     * @param blockHash
+     * @return isPresent
+     */
+    boolean containsBlock(byte[] blockHash);
+
+    /**
+     * Remove a block from the store.
+     *
+     * @param blockHash
+     */
+    void removeBlock(byte[] blockHash);
+
+    /**
+     * Returns the size in bytes that a block takes up in the store, or -1 if the
+     * block is not present.
+     *
+     * @param blockHash
+     * @return size
+     */
+    long getBlockSize(byte[] blockHash);
+
+    /**
+     * Rewrite a stored block in the compressed format of the cold tier. Reading the block
+     * decompresses it transparently. Blocks that are already compressed, and stores without a
+     * compressed tier, are left as they are.
+     *
+     * @param blockHash
+     * @return the size in bytes the block takes up in the store afterwards, or -1 if the block
+     * is not present
+     */
+    long compressBlock(byte[] blockHash);
+
+    /**
+     * Release the space held by blocks that have been removed or overwritten,
+     * where the store does not do so on its own.
+     */
+    void compact();
+
+    /**
+     * Returns the hashes of all blocks in the store.
+     *
+     * @return blockHashes
+     */
+    Iterable<byte[]> getBlockHashes();
+
+    /**
+     * Returns the number of blocks in the store.
+     *
+     * @return size
+     */
+    long size();
+
+    /**
+     * Remove every block from the store, including any files backing it.
+     */
+    void clear();
+
+    /**
+     * Force any buffered writes through to disk.
+     */
+    void flush();
+
+    /**
+     * Close the store, releasing any open files. Maps the store keeps in the
+     * blockchain database are closed along with that database.
+     */
+    void close();
+
+}
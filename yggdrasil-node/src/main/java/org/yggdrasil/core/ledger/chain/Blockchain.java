@@ -2,13 +2,29 @@ package org.yggdrasil.core.ledger.chain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import org.mapdb.BTreeMap;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.mapdb.HTreeMap;
 import org.mapdb.Serializer;
 import org.springframework.beans.factory.annotation.Value;
+import org.yggdrasil.core.ledger.chain.runners.BlockCompressRunner;
+import org.yggdrasil.core.ledger.chain.runners.BlockPruneRunner;
+import org.yggdrasil.core.ledger.chain.runners.ChainCheckpointRunner;
+import org.yggdrasil.core.ledger.exceptions.BlockStoreException;
+import org.yggdrasil.core.ledger.transaction.Transaction;
+import org.yggdrasil.core.ledger.utxo.BlockUndo;
+import org.yggdrasil.core.ledger.utxo.CoinsCache;
+import org.yggdrasil.core.ledger.utxo.UtxoSet;
+import org.yggdrasil.core.serialization.BlockSerializer;
+import org.yggdrasil.core.serialization.BlockUndoSerializer;
+import org.yggdrasil.core.serialization.CoinSerializer;
+import org.yggdrasil.core.serialization.CompressedBlockSerializer;
 import org.yggdrasil.core.utils.CryptoHasher;
 import org.yggdrasil.core.utils.DateTimeUtil;
+import org.yggdrasil.core.utils.MerkleProof;
+import org.yggdrasil.core.utils.MerkleTree;
+import org.yggdrasil.core.utils.SegmentedLruCache;
 import org.yggdrasil.node.network.NodeConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,12 +34,16 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -38,7 +58,7 @@ import java.util.concurrent.TimeUnit;
 public class Blockchain implements Cloneable {
     private Logger logger = LoggerFactory.getLogger(Blockchain.class);
     //The software version
-    public static final int _VERSION = 0x000010;
+    public static final int _VERSION = 0x000011;
 
     // The size of the window in which the hash difficulty is calculated,
     // in the number of blocks
@@ -48,14 +68,61 @@ public class Blockchain implements Cloneable {
     private final Integer _BLOCK_SOLVE_TIME = 600;
     // The proof of work limit
     private final Integer _POW_LIMIT = 32;
-    // The time (in minutes) that blocks recently created and added to the blockchain
-    // should expire from the cache.
-    @Value("${blockchain.cache.put-expiration:5}")
-    private Integer _CACHE_PUT_EXPIRATION;
-    // The time (in minutes) that blocks recently retrieved from archive
-    // should expire from the cache.
-    @Value("${blockchain.cache.get-expiration:5}")
-    private Integer _CACHE_GET_EXPIRATION;
+    // The maximum number of decoded blocks to keep in the cache.
+    @Value("${blockchain.cache.max-entries:2048}")
+    private Long _CACHE_MAX_ENTRIES;
+    // The maximum estimated size (in bytes) of the decoded blocks kept in the cache.
+    @Value("${blockchain.cache.max-bytes:67108864}")
+    private Long _CACHE_MAX_BYTES;
+    // When running as a pruned node, the number of blocks behind the tip to keep the bodies of.
+    @Value("${blockchain.prune.target-blocks:0}")
+    private Long _PRUNE_TARGET_BLOCKS;
+    // When running as a pruned node, the approximate size (in MB) of block bodies to keep.
+    @Value("${blockchain.prune.target-mb:0}")
+    private Long _PRUNE_TARGET_MB;
+    // The least number of block bodies a pruned node keeps, regardless of the targets, so
+    // that recent blocks can still be served and rolled back.
+    private static final long _PRUNE_MIN_BLOCKS = 288;
+    // The number of recent blocks used to estimate the stored size of a block
+    private static final int _PRUNE_SIZE_SAMPLE = 144;
+    // The interval (in seconds) at which checkpoints of the chain tip are written.
+    @Value("${blockchain.checkpoint.interval:60}")
+    private Long _CHECKPOINT_INTERVAL;
+    // The number of chain checkpoints to keep on disk
+    private static final int _CHECKPOINT_KEEP = 2;
+    // Rough in-memory size estimates used for weighing blocks in the cache
+    private static final long _BLOCK_BASE_SIZE = 512;
+    private static final long _TXN_BASE_SIZE = 384;
+    private static final long _TXN_IO_SIZE = 128;
+    // The storage engine used for archiving blocks, either "mapdb" or "segmented".
+    @Value("${blockchain.storage.engine:mapdb}")
+    private String _STORAGE_ENGINE;
+    // The maximum size (in bytes) of a block segment file when using the segmented storage engine.
+    @Value("${blockchain.storage.segment-size:134217728}")
+    private Long _SEGMENT_SIZE;
+    // The number of block writes collected into a single commit of the chain database.
+    @Value("${blockchain.storage.commit-batch-size:256}")
+    private Integer _COMMIT_BATCH_SIZE;
+    // The longest time (in milliseconds) a block write waits before it is committed.
+    @Value("${blockchain.storage.commit-latency:250}")
+    private Long _COMMIT_LATENCY;
+    // The number of confirmations after which blocks are compressed in the archive, 0 to not compress blocks.
+    @Value("${blockchain.storage.compress-after:0}")
+    private Long _COMPRESS_AFTER;
+    // The deflate level used for compressing blocks, 1 (fastest) to 9 (smallest).
+    @Value("${blockchain.storage.compression-level:6}")
+    private Integer _COMPRESSION_LEVEL;
+    // The number of blocks compressed in each run of the compression timer
+    private static final int _COMPRESS_BATCH = 1000;
+    // The estimated size (in MB) of unspent output changes held in memory before they are flushed.
+    @Value("${blockchain.utxo.cache-mb:64}")
+    private Long _UTXO_CACHE_MB;
+    // The longest time (in seconds) unspent output changes are held in memory before they are flushed.
+    @Value("${blockchain.utxo.flush-interval:60}")
+    private Long _UTXO_FLUSH_INTERVAL;
+    // The number of threads used for verifying the chain, 0 to use one per core.
+    @Value("${blockchain.verify.threads:0}")
+    private Integer _VERIFY_THREADS;
     // The base difficulty of the hash computation. This number is dynamic and
     // adjusts automatically to ensure proper solve time.
     private Integer _BASE_DIFFICULTY = 4;
@@ -63,6 +130,9 @@ public class Blockchain implements Cloneable {
     // about the machine (randomly generated UUIDs) and general node configuration.
     @Autowired
     private transient NodeConfig nodeConfig;
+    // The index of where each confirmed transaction is, which only holds locations when enabled
+    @Autowired(required = false)
+    private transient TransactionIndex txIndex;
     // The node index is the identifying UUID of this current node. If not defined
     // than a new one is randomly generated.
     private UUID nodeIndex;
@@ -71,20 +141,59 @@ public class Blockchain implements Cloneable {
     private ZonedDateTime timestamp;
     // Cache storage for "hot blocks" or blocks that have been used recently or requested
     // by other nodes, in the event they need to be used again. Data is written through the
-    // cache to disk, but end up persisting in the cache for a bit longer.
-    private transient DB cache;
-    // The implementation for the cache.
-    private HTreeMap hotBlocks;
+    // cache to disk, and blocks are kept decoded so that a cache hit is only a map lookup.
+    private transient SegmentedLruCache<ByteBuffer, Block> hotBlocks;
     // On-disk storage for the blockchain data. Blocks are written to disk as they are received
     // or generated.
     private transient DB database;
     // The archival, on-disk storage implementation for the blockchain.
-    private transient HTreeMap coldBlocks;
+    private transient BlockStore coldBlocks;
+    // Index of the main chain, mapping each block height to the hash of the block stored
+    // at that height. Used for looking blocks up by height and serving ranges of blocks
+    // without walking the previous block hashes back through the chain.
+    private transient BTreeMap<Long, byte[]> chainHeights;
+    // Tree of every known block across all branches, used for choosing the best chain by
+    // cumulative work and for finding where a branch forks from the main chain.
+    private transient BlockIndex blockIndex;
     // Storage for the state that the chain was in between runtimes of the node. Primarily
     // just used for storing the last known block so that indexing and sync can occur.
-    private transient HTreeMap blockchainState;
+    private transient HTreeMap<String, Object> blockchainState;
     // The last known block's hash. Used for keeping track of the last processed block.
     private transient byte[] lastBlockHash;
+    // The heights and times of the most recent blocks of the main chain, used for
+    // retargeting the difficulty without reading the blocks back.
+    private transient DifficultyWindow difficultyWindow;
+    // The height up to which block bodies have been pruned, -1 if no blocks have been pruned.
+    private transient long pruneHeight = -1;
+    // Timer for pruning block bodies when running as a pruned node
+    private transient Timer pruneTimer;
+    // The total work done on the main chain, the sum of the work of each block up to the tip.
+    private transient BigInteger cumulativeWork = BigInteger.ZERO;
+    // Timer for writing checkpoints of the chain tip
+    private transient Timer checkpointTimer;
+    // Block writes (block, height index and tip) are grouped into batches, each committed to the
+    // chain database with a single write-ahead log append and sync. Commits happen when the batch
+    // is full, or when its oldest write has waited for the commit latency.
+    private transient ScheduledExecutorService commitExecutor;
+    // The unspent outputs of the main chain
+    private transient UtxoSet utxoSet;
+    // The undo record of each block in the main chain, the outputs it spent, so that it can be
+    // disconnected without going back through the chain. Pruned along with the block bodies.
+    private transient HTreeMap<byte[], BlockUndo> blockUndo;
+    // Listeners for the blocks connected to and disconnected from the main chain
+    private transient final List<ChainListener> chainListeners = new CopyOnWriteArrayList<>();
+    // Stored blocks with more work than the main chain whose branch is still missing block bodies
+    private transient final Set<BlockIndexNode> candidateTips = new HashSet<>();
+    // Timer for compressing the blocks that are old enough
+    private transient Timer compressTimer;
+    // The uncompressed and compressed size of each main chain block counted by the compression
+    // counters, so that they can be taken back out when the block is disconnected
+    private transient HTreeMap<byte[], long[]> compressedSizes;
+    // Verifies stored ranges of the chain in parallel
+    private transient ChainVerifier chainVerifier;
+    private transient int pendingWrites;
+    private transient long oldestPendingWrite;
+    private transient final Object commitLock = new Object();
 
     // Initialize the blockchain by defining the databases and restoring previous state.
     @PostConstruct
@@ -93,38 +202,75 @@ public class Blockchain implements Cloneable {
         this.nodeIndex = nodeConfig.getNodeIndex();
         // Get the current timestamp
         this.timestamp = DateTimeUtil.getCurrentTimestamp();
-        // If the save directory for the cache is not made create it.
-        this.cache = DBMaker
-                .memoryDirectDB()
-                .make();
         // If the save directory for the archival database is not made create it.
         this.database = DBMaker
                 .fileDB(nodeConfig._CURRENT_DIRECTORY + "/chain" + nodeConfig._FILE_EXTENSION)
                 .fileMmapEnableIfSupported()
+                .transactionEnable()
                 .make();
-        // Create the cold block storage
-        this.coldBlocks = this.database
-                .hashMap("coldChain")
-                .keySerializer(Serializer.BYTE_ARRAY)
-                .counterEnable()
-                .createOrOpen();
-        // Create the blockchain state storage
-        this.blockchainState = this.database
+        // Create the blockchain state storage, whose values are written with the default serializer
+        this.blockchainState = (HTreeMap<String, Object>) this.database
                 .hashMap("BCState")
                 .keySerializer(Serializer.STRING)
                 .counterEnable()
                 .createOrOpen();
-        // Create the hot block storage
-        this.hotBlocks = this.cache
-                .hashMap("hotChain")
+        // Create the cold block storage
+        this.coldBlocks = this.openBlockStore();
+        logger.info("Using the {} block storage engine.", _STORAGE_ENGINE);
+        // Move blocks written with the Java serialized format over to the binary codec
+        this.migrateBlockStorage();
+        // Create the height index of the main chain
+        this.chainHeights = this.database
+                .treeMap("chainHeight")
+                .keySerializer(Serializer.LONG)
+                .valueSerializer(Serializer.BYTE_ARRAY)
+                .createOrOpen();
+        // Create the block index tree and load the known blocks into it
+        this.blockIndex = new BlockIndex(this.database
+                .hashMap("blockIndex")
+                .keySerializer(Serializer.BYTE_ARRAY)
+                .valueSerializer(Serializer.BYTE_ARRAY)
+                .createOrOpen());
+        this.blockIndex.load();
+        // Create the UTXO set
+        this.utxoSet = new UtxoSet(new CoinsCache(this.database
+                .treeMap("utxo")
+                .keySerializer(Serializer.BYTE_ARRAY)
+                .valueSerializer(new CoinSerializer())
+                .createOrOpen(), _UTXO_CACHE_MB * 1024 * 1024, _UTXO_FLUSH_INTERVAL * 1000),
+                this.getStateLong("utxoHeight", -1L));
+        // Create the undo records, the outputs spent by each block of the main chain
+        this.blockUndo = this.database
+                .hashMap("blockUndo")
+                .keySerializer(Serializer.BYTE_ARRAY)
+                .valueSerializer(new BlockUndoSerializer())
+                .createOrOpen();
+        // Create the sizes of the compressed main chain blocks
+        this.compressedSizes = this.database
+                .hashMap("compressedSizes")
                 .keySerializer(Serializer.BYTE_ARRAY)
-                .expireAfterCreate(_CACHE_PUT_EXPIRATION, TimeUnit.MINUTES)
-                .expireAfterGet(_CACHE_GET_EXPIRATION, TimeUnit.MINUTES)
-                .expireOverflow(this.coldBlocks)
-                .expireExecutor(Executors.newScheduledThreadPool(2))
+                .valueSerializer(Serializer.LONG_ARRAY)
                 .createOrOpen();
+        // Create the hot block storage
+        this.hotBlocks = new SegmentedLruCache<>(_CACHE_MAX_ENTRIES, _CACHE_MAX_BYTES, Blockchain::estimateBlockSize);
+        this.difficultyWindow = new DifficultyWindow(_BLOCK_SOLVE_WINDOW);
         // If there was state previously stored, restore that state
         this.restoreState();
+        // Chains stored before the height index existed need to be indexed once
+        if(this.chainHeights.isEmpty() && this.lastBlockHash != null) {
+            this.rebuildHeightIndex();
+        }
+        // Resume from the newest checkpoint, otherwise the tip state has to be rebuilt from the chain
+        boolean restored = this.restoreCheckpoint();
+        if(!restored && !this.chainHeights.isEmpty()) {
+            this.rebuildTipState();
+        }
+        // Chains stored before the block index existed need to be indexed once
+        if(this.blockIndex.isEmpty() && !this.chainHeights.isEmpty()) {
+            this.rebuildBlockIndex();
+        }
+        // Chains stored before the UTXO set existed (or after it fell behind) need to be applied to it
+        this.catchUpUtxoSet();
         // If the cold block storage has nothing in it, generate the genesis block
         // regardless, set the base difficulty, either to the default or calculate
         // if there are blocks that have been stored previously
@@ -134,26 +280,279 @@ public class Blockchain implements Cloneable {
             this._BASE_DIFFICULTY = 4;
         } else if(this.coldBlocks.size() == 1){
             this._BASE_DIFFICULTY = 4;
-        } else {
+        } else if(!restored) {
+            // A restored checkpoint already holds the base difficulty as of its tip
             this._BASE_DIFFICULTY = this.calculateDifficulty();
         }
+        if(nodeConfig.isPruned()) {
+            logger.info("Running as a pruned node, keeping at least {} blocks and {} MB of block bodies.", _PRUNE_TARGET_BLOCKS, _PRUNE_TARGET_MB);
+            this.pruneTimer = new Timer();
+            this.pruneTimer.schedule(new BlockPruneRunner(this), 60000, 60000);
+        }
+        if(_COMPRESS_AFTER > 0 && nodeConfig.isPruned()) {
+            logger.warn("Block compression is not used when running as a pruned node.");
+        } else if(_COMPRESS_AFTER > 0) {
+            logger.info("Compressing blocks with more than {} confirmations, compressed up to height {}.",
+                    _COMPRESS_AFTER, this.getStateLong("compressedHeight", -1L));
+            this.compressTimer = new Timer();
+            this.compressTimer.schedule(new BlockCompressRunner(this), 30000, 60000);
+        }
+        this.checkpointTimer = new Timer();
+        this.checkpointTimer.schedule(new ChainCheckpointRunner(this), _CHECKPOINT_INTERVAL * 1000, _CHECKPOINT_INTERVAL * 1000);
+        // Commit everything restored, migrated or rebuilt during startup
+        this.database.commit();
+        this.chainVerifier = new ChainVerifier(_VERIFY_THREADS);
+        this.commitExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.commitExecutor.scheduleWithFixedDelay(this::commitIfDue, _COMMIT_LATENCY, _COMMIT_LATENCY, TimeUnit.MILLISECONDS);
     }
 
     // Before this object is removed from memory, dump all data to disk.
     @PreDestroy
     public void onDestroy() throws Exception {
         logger.info("Shutting down blockchain database.");
-        if (this.lastBlockHash != null) {
-            this.blockchainState.put("lastBlockHash", this.lastBlockHash);
+        if (this.pruneTimer != null) {
+            this.pruneTimer.cancel();
+        }
+        if (this.checkpointTimer != null) {
+            this.checkpointTimer.cancel();
+        }
+        if (this.compressTimer != null) {
+            this.compressTimer.cancel();
         }
-        this.hotBlocks.clearWithExpire();
+        if (this.commitExecutor != null) {
+            this.commitExecutor.shutdown();
+        }
+        if (this.chainVerifier != null) {
+            this.chainVerifier.shutdown();
+        }
+        this.writeCheckpoint();
+        synchronized (commitLock) {
+            this.flushUtxoSet();
+            this.commitWrites();
+        }
+        logger.info("Block cache stats: {}", this.hotBlocks.getStats());
+        logger.info("Coins cache stats: {}", this.utxoSet.getCoinsCache().getStats());
+        this.hotBlocks.clear();
         this.coldBlocks.close();
-        this.blockchainState.close();
+        this.database.close();
+    }
+
+    // Private function to open the archival block store for the configured storage engine. The
+    // store can always read compressed blocks, even if compression was turned off after they
+    // were written.
+    private BlockStore openBlockStore() {
+        Serializer<Block> serializer = new BlockSerializer();
+        Serializer<Block> compressedSerializer = new CompressedBlockSerializer(_COMPRESSION_LEVEL);
+        if(_STORAGE_ENGINE.equalsIgnoreCase("segmented")) {
+            return new SegmentedBlockStore(Path.of(nodeConfig._CHAIN_DATA_DIRECTORY + "/blocks"), _SEGMENT_SIZE, serializer,
+                    compressedSerializer, this.database
+                            .hashMap("blockSegments")
+                            .keySerializer(Serializer.BYTE_ARRAY)
+                            .valueSerializer(Serializer.LONG_ARRAY)
+                            .counterEnable()
+                            .createOrOpen());
+        }
+        return new MapDBBlockStore(this.database
+                .hashMap("blocks")
+                .keySerializer(Serializer.BYTE_ARRAY)
+                .valueSerializer(serializer)
+                .counterEnable()
+                .createOrOpen(), this.database
+                .hashMap("compressedBlocks")
+                .keySerializer(Serializer.BYTE_ARRAY)
+                .valueSerializer(compressedSerializer)
+                .counterEnable()
+                .createOrOpen(), this.database
+                .hashMap("blockSizes")
+                .keySerializer(Serializer.BYTE_ARRAY)
+                .valueSerializer(Serializer.LONG)
+                .createOrOpen());
+    }
+
+    // Private function to copy any blocks from the legacy store, which holds the blocks written with
+    // Java serialization before the binary block codec, into the current store of whichever engine
+    // is configured. This only has to happen once, the codec version is kept in the chain state
+    // afterwards.
+    private void migrateBlockStorage() {
+        if(Objects.equals(this.blockchainState.get("blockCodecVersion"), BlockSerializer.CODEC_VERSION)) {
+            return;
+        }
+        if(this.database.exists("coldChain")) {
+            BlockStore legacyBlocks = new MapDBBlockStore((HTreeMap) this.database
+                    .hashMap("coldChain")
+                    .keySerializer(Serializer.BYTE_ARRAY)
+                    .counterEnable()
+                    .open());
+            logger.info("Migrating {} stored blocks to block codec version {}.", legacyBlocks.size(), BlockSerializer.CODEC_VERSION);
+            for(byte[] blockHash : legacyBlocks.getBlockHashes()) {
+                legacyBlocks.getBlock(blockHash).ifPresent(block -> this.coldBlocks.putBlock(blockHash, block));
+            }
+            this.coldBlocks.flush();
+            legacyBlocks.clear();
+            legacyBlocks.close();
+            logger.info("Block migration complete.");
+        }
+        this.blockchainState.put("blockCodecVersion", BlockSerializer.CODEC_VERSION);
+    }
+
+    // Private function to read a counter or height from the chain state
+    private long getStateLong(String key, long defaultValue) {
+        Object value = this.blockchainState.get(key);
+        return value == null ? defaultValue : (long) value;
+    }
+
+    // Private function to write a counter or height to the chain state, committed along with the blocks
+    private void putStateLong(String key, long value) {
+        this.blockchainState.put(key, value);
     }
 
     // Private function to set the current state from storage
     private void restoreState() {
         this.lastBlockHash = (byte[]) this.blockchainState.get("lastBlockHash");
+        this.pruneHeight = this.getStateLong("pruneHeight", -1L);
+    }
+
+    // Private function to resume the chain tip state from the newest checkpoint that matches the
+    // height index, replaying the blocks indexed after it. Returns false if there is no usable
+    // checkpoint.
+    private boolean restoreCheckpoint() {
+        for(ChainCheckpoint checkpoint : ChainCheckpoint.readAll(Path.of(nodeConfig._CHAIN_DATA_DIRECTORY, "checkpoints"))) {
+            byte[] indexedHash = this.chainHeights.get(checkpoint.getTipHeight());
+            if(indexedHash == null || !CryptoHasher.isEqualHashes(indexedHash, checkpoint.getTipHash())
+                    || !this.coldBlocks.containsBlock(checkpoint.getTipHash())) {
+                logger.warn("Skipping chain checkpoint at height {}, it does not match the stored chain.", checkpoint.getTipHeight());
+                continue;
+            }
+            this.lastBlockHash = checkpoint.getTipHash();
+            this.cumulativeWork = checkpoint.getCumulativeWork();
+            this._BASE_DIFFICULTY = checkpoint.getBaseDifficulty();
+            // The stored prune height is authoritative, an older checkpoint must not bring back pruned bodies
+            this.pruneHeight = Math.max(this.pruneHeight, checkpoint.getWatermark("pruneHeight", this.pruneHeight));
+            this.difficultyWindow.restore(checkpoint.getDifficultyWindow());
+            // Blocks added after the checkpoint was written, up to the first one that did not make it to disk
+            long replayed = 0;
+            for(Map.Entry<Long, byte[]> indexed : new ArrayList<>(this.chainHeights.tailMap(checkpoint.getTipHeight(), false).entrySet())) {
+                Optional<Block> block = this.coldBlocks.getBlock(indexed.getValue());
+                if(block.isEmpty()) {
+                    logger.warn("Block at height {} is missing, the height index is truncated there.", indexed.getKey());
+                    this.truncateHeightIndex(indexed.getKey());
+                    break;
+                }
+                this.applyTip(block.get());
+                replayed++;
+            }
+            logger.info("Resumed from the chain checkpoint at height {}, replayed {} blocks.", checkpoint.getTipHeight(), replayed);
+            return true;
+        }
+        return false;
+    }
+
+    // Private function to rebuild the chain tip state from the height index, used when there is
+    // no usable checkpoint. This reads every block header in the main chain once.
+    private void rebuildTipState() {
+        logger.info("No chain checkpoint found, rebuilding the tip state from the stored chain.");
+        this.cumulativeWork = BigInteger.ZERO;
+        this.difficultyWindow.clear();
+        for(Map.Entry<Long, byte[]> indexed : new ArrayList<>(this.chainHeights.entrySet())) {
+            Optional<Block> block = this.coldBlocks.getBlock(indexed.getValue());
+            if(block.isEmpty()) {
+                this.truncateHeightIndex(indexed.getKey());
+                break;
+            }
+            this.applyTip(block.get());
+        }
+        logger.info("Rebuilt the tip state at height {}.", this.getChainHeight());
+    }
+
+    // Private function to add the blocks of the main chain to the block index. This only has to
+    // happen once, afterwards every block is indexed as it is added.
+    private void rebuildBlockIndex() {
+        logger.info("Building the block index for the stored chain.");
+        for(byte[] blockHash : this.chainHeights.values()) {
+            Optional<Block> block = this.coldBlocks.getBlock(blockHash);
+            if(block.isEmpty()) {
+                break;
+            }
+            this.blockIndex.addNode(block.get().getHeader(), blockHash, block.get().getBlockHeight().longValue(), BlockIndexNode.Status.DATA_STORED);
+        }
+        logger.info("Indexed {} blocks in the block index.", this.blockIndex.size());
+    }
+
+    // Private function to remove the heights from the given height up from the height index
+    private void truncateHeightIndex(long fromHeight) {
+        for(Long height : new ArrayList<>(this.chainHeights.tailMap(fromHeight, true).keySet())) {
+            this.chainHeights.remove(height);
+        }
+    }
+
+    // Private function to move the tip state forward to a block that was added to the main chain
+    private void applyTip(Block block) {
+        this.lastBlockHash = block.getBlockHash();
+        this.cumulativeWork = this.cumulativeWork.add(getBlockWork(block.getHeader()));
+        this.difficultyWindow.addBlock(block.getBlockHeight().longValue(), block.getHeader().getEpochTime());
+    }
+
+    /**
+     * Write a checkpoint of the chain tip state, so that the chain can resume from it on
+     * the next start.
+     */
+    public void writeCheckpoint() throws IOException {
+        // The tip state is read under the commit lock, so the checkpoint is a consistent snapshot
+        // that is never ahead of what has been committed
+        synchronized (commitLock) {
+            if(this.lastBlockHash == null || this.chainHeights.isEmpty()) {
+                return;
+            }
+            this.blockchainState.put("lastBlockHash", this.lastBlockHash);
+            this.commitWrites();
+            ChainCheckpoint checkpoint = ChainCheckpoint.Builder.builder()
+                    .setTipHeight(this.getChainHeight())
+                    .setTipHash(this.lastBlockHash)
+                    .setCumulativeWork(this.cumulativeWork)
+                    .setBaseDifficulty(this._BASE_DIFFICULTY)
+                    .setDifficultyWindow(this.difficultyWindow.toArray())
+                    .setWatermark("pruneHeight", this.pruneHeight)
+                    .build();
+            checkpoint.write(Path.of(nodeConfig._CHAIN_DATA_DIRECTORY, "checkpoints"), _CHECKPOINT_KEEP);
+            logger.debug("Wrote chain checkpoint at height {}.", checkpoint.getTipHeight());
+        }
+    }
+
+    /**
+     * Returns the expected amount of work (hashes) for a block header, which grows by a
+     * factor of 16 for each leading zero hex digit required by its difficulty.
+     *
+     * @param header
+     * @return work
+     */
+    public static BigInteger getBlockWork(BlockHeader header) {
+        return BigInteger.ONE.shiftLeft(4 * Math.max(header.getDiff(), 0));
+    }
+
+    /**
+     * Returns the total work done on the main chain up to the tip.
+     *
+     * @return cumulativeWork
+     */
+    @JsonIgnore
+    public BigInteger getCumulativeWork() {
+        return this.cumulativeWork;
+    }
+
+    // Private function to index a previously stored chain by walking back from the last
+    // known block. This only has to happen once, afterwards the index is kept up to date
+    // as blocks are added.
+    private void rebuildHeightIndex() {
+        logger.info("Building the block height index for the stored chain.");
+        Optional<Block> block = this.getBlock(this.lastBlockHash);
+        while(block.isPresent()) {
+            this.chainHeights.put(block.get().getBlockHeight().longValue(), block.get().getBlockHash());
+            if(block.get().getHeader().getPreviousBlockHash() == null) {
+                break;
+            }
+            block = this.getBlock(block.get().getHeader().getPreviousBlockHash());
+        }
+        logger.info("Indexed {} blocks by height.", this.chainHeights.size());
     }
 
     /**
@@ -175,51 +574,527 @@ public class Blockchain implements Cloneable {
     }
 
     /**
-     * Get the current blocks from the cache in an array.
+     * Add a new block to the chain. This block will be written through to the archive and kept
+     * in the cache until it is evicted.
      *
-     * @return blocks[]
+     * @param block
      */
-    public Block[] getBlocks() {
-        return (Block[]) this.hotBlocks.values().toArray(Block[]::new);
+    public void addBlock(Block block) throws Exception {
+        logger.trace("Received a block to evaluate for adding to the chain");
+        synchronized (commitLock) {
+            // If the block already exists, we throw an exception
+            BlockIndexNode known = this.blockIndex.getNode(block.getBlockHash());
+            if (known != null && known.getStatus() == BlockIndexNode.Status.DATA_STORED) throw new RuntimeException("Duplicate block!");
+            // A block that failed validation stays failed, even when it is delivered again
+            if (known != null && known.getStatus() == BlockIndexNode.Status.FAILED) throw new RuntimeException("Block failed validation");
+            // Previous block, which may be on any branch that is known
+            BlockIndexNode parent = this.blockIndex.getNode(block.getHeader().getPreviousBlockHash());
+            // If the previous block as indicated by the incoming block is not known, throw an exception
+            if (parent == null) throw new RuntimeException("Previous block not found");
+            // Blocks building on a block that failed validation, however far back, fail as well
+            if (this.getBranchStatus(parent) == BlockIndexNode.Status.FAILED) throw new RuntimeException("Previous block failed validation");
+            // The same txn twice can match the merkle root of a block without it
+            if (block.getData() != null && MerkleTree.hasDuplicateTxns(block.getData())) throw new RuntimeException("Block holds the same txn more than once");
+            // If the new block's time is too early, then throw an exception
+            if (parent.getEpochTime() >= block.getHeader().getEpochTime()) throw new RuntimeException("Block's timestamp too early");
+            // Check the proof of work
+
+            // Increment the blockHeight
+            block.setBlockHeight(BigInteger.valueOf(parent.getHeight() + 1));
+            // The block is safe to be placed into the chain storage! The block, its index node, and (if it
+            // becomes the tip) the height index and tip are written as part of the same batch, so they
+            // are committed together.
+            this.coldBlocks.putBlock(block.getBlockHash(), block);
+            this.hotBlocks.put(ByteBuffer.wrap(block.getBlockHash()), block);
+            // A block whose header was already indexed (headers first) has its node upgraded in place
+            BlockIndexNode node = known;
+            if (node == null) {
+                node = this.blockIndex.addNode(block.getHeader(), block.getBlockHash(), parent.getHeight() + 1, BlockIndexNode.Status.DATA_STORED);
+            } else {
+                this.blockIndex.setStatus(node, BlockIndexNode.Status.DATA_STORED);
+            }
+            // The block only becomes the tip if its branch has more work than the main chain, and every
+            // block of the branch has its body stored. A heavier branch that is still missing bodies is
+            // kept as a candidate, and reconsidered as the missing bodies arrive.
+            BlockIndexNode tip = this.blockIndex.getNode(this.lastBlockHash);
+            if (tip == null || node.getCumulativeWork().compareTo(tip.getCumulativeWork()) > 0) {
+                this.candidateTips.add(node);
+            }
+            try {
+                BlockIndexNode best = this.selectCandidateTip(tip);
+                if (best != null) {
+                    this.setTip(tip, best);
+                } else {
+                    logger.debug("Stored block {} on a side branch at height {}.", block, node.getHeight());
+                }
+            } finally {
+                // The block and its index node are written even when its branch fails to connect
+                this.recordWrite();
+            }
+        }
+    }
+
+    // Private function to pick the candidate tip with the most work, out of the candidates that have
+    // more work than the current tip and whose branch is stored in full. Candidates that can no
+    // longer become the tip are dropped.
+    private BlockIndexNode selectCandidateTip(BlockIndexNode tip) {
+        BlockIndexNode best = null;
+        for (Iterator<BlockIndexNode> candidates = this.candidateTips.iterator(); candidates.hasNext(); ) {
+            BlockIndexNode candidate = candidates.next();
+            BlockIndexNode.Status branchStatus = this.getBranchStatus(candidate);
+            if (branchStatus == BlockIndexNode.Status.FAILED
+                    || (tip != null && candidate.getCumulativeWork().compareTo(tip.getCumulativeWork()) <= 0)) {
+                candidates.remove();
+            } else if (branchStatus == BlockIndexNode.Status.DATA_STORED
+                    && (best == null || candidate.getCumulativeWork().compareTo(best.getCumulativeWork()) > 0)) {
+                best = candidate;
+            }
+        }
+        if (best != null) {
+            this.candidateTips.remove(best);
+        }
+        return best;
+    }
+
+    // Private function to get the status of a branch, from a node back to where it joins the main
+    // chain: FAILED if any block of the branch failed validation, HEADER_VALID if any block of the
+    // branch is missing its body, otherwise DATA_STORED.
+    private BlockIndexNode.Status getBranchStatus(BlockIndexNode node) {
+        BlockIndexNode.Status status = BlockIndexNode.Status.DATA_STORED;
+        for (; node != null; node = node.getParent()) {
+            byte[] indexedHash = this.chainHeights.get(node.getHeight());
+            if (indexedHash != null && CryptoHasher.isEqualHashes(indexedHash, node.getBlockHash())) {
+                break;
+            }
+            if (node.getStatus() == BlockIndexNode.Status.FAILED) {
+                return BlockIndexNode.Status.FAILED;
+            }
+            if (node.getStatus() != BlockIndexNode.Status.DATA_STORED) {
+                status = BlockIndexNode.Status.HEADER_VALID;
+            }
+        }
+        return status;
+    }
+
+    // Private function to make a node the tip of the main chain. When the node is not a child of the
+    // current tip, the main chain is reorganized: the blocks after the fork are disconnected, and the
+    // blocks of the new branch are connected, so only the differing part of the chain is touched.
+    private void setTip(BlockIndexNode currentTip, BlockIndexNode newTip) {
+        BlockIndexNode fork = BlockIndex.findFork(currentTip, newTip);
+        long forkHeight = fork == null ? -1 : fork.getHeight();
+        // Disconnect the blocks of the current main chain after the fork
+        for(BlockIndexNode node = currentTip; node != null && node != fork; node = node.getParent()) {
+            this.disconnectBlock(node);
+        }
+        // Connect the blocks of the new branch, oldest first
+        Deque<BlockIndexNode> branch = new ArrayDeque<>();
+        for(BlockIndexNode node = newTip; node != null && node != fork; node = node.getParent()) {
+            branch.push(node);
+        }
+        Deque<BlockIndexNode> connected = new ArrayDeque<>();
+        for(BlockIndexNode node : branch) {
+            try {
+                this.connectBlock(node);
+            } catch (RuntimeException e) {
+                // The block spends outputs that are not unspent, so the branch is failed from it on
+                // and the main chain goes back to the blocks it had
+                this.chainHeights.remove(node.getHeight());
+                this.blockIndex.setStatus(node, BlockIndexNode.Status.FAILED);
+                connected.forEach(this::disconnectBlock);
+                Deque<BlockIndexNode> restored = new ArrayDeque<>();
+                for(BlockIndexNode old = currentTip; old != null && old != fork; old = old.getParent()) {
+                    restored.push(old);
+                }
+                restored.forEach(this::connectBlock);
+                if(currentTip != null) {
+                    this.rebuildDifficultyWindow(currentTip);
+                }
+                this.flushUtxoSet();
+                throw e;
+            }
+            connected.push(node);
+        }
+        if(currentTip != null && currentTip != fork) {
+            logger.info("Reorganized the chain at height {}: disconnected {} blocks, connected {} blocks.",
+                    forkHeight, currentTip.getHeight() - forkHeight, branch.size());
+            this.rebuildDifficultyWindow(newTip);
+            // The outputs restored from the undo records are flushed right away, so the stored set
+            // is never committed as of a block that is no longer in the main chain
+            this.flushUtxoSet();
+        }
+        this.lastBlockHash = newTip.getBlockHash();
+        this.cumulativeWork = newTip.getCumulativeWork();
+        this.blockchainState.put("lastBlockHash", this.lastBlockHash);
+    }
+
+    // Private function to remove a block from the main chain
+    private void disconnectBlock(BlockIndexNode node) {
+        this.chainHeights.remove(node.getHeight());
+        // The block that replaces it at this height has not been compressed yet
+        if(node.getHeight() <= this.getStateLong("compressedHeight", -1L)) {
+            this.putStateLong("compressedHeight", node.getHeight() - 1);
+            long[] sizes = this.compressedSizes.remove(node.getBlockHash());
+            if(sizes != null) {
+                this.putStateLong("compressedBlocks", this.getStateLong("compressedBlocks", 0L) - 1);
+                this.putStateLong("compressedRawBytes", this.getStateLong("compressedRawBytes", 0L) - sizes[0]);
+                this.putStateLong("compressedBytes", this.getStateLong("compressedBytes", 0L) - sizes[1]);
+            }
+        }
+        if(node.getHeight() <= this.utxoSet.getHeight()) {
+            Optional<Block> block = this.getBlock(node.getBlockHash());
+            if(block.isPresent()) {
+                this.utxoSet.disconnectBlock(block.get(), this.blockUndo.remove(node.getBlockHash()), node.getHeight());
+            }
+        }
+        this.chainListeners.forEach(listener -> listener.blockDisconnected(node.getBlockHash(), node.getHeight()));
+    }
+
+    // Private function to add a block to the main chain
+    private void connectBlock(BlockIndexNode node) {
+        this.chainHeights.put(node.getHeight(), node.getBlockHash());
+        this.difficultyWindow.addBlock(node.getHeight(), node.getEpochTime());
+        Optional<Block> block = this.utxoSet.getHeight() == node.getHeight() - 1 ? this.getBlock(node.getBlockHash()) : Optional.empty();
+        if(block.isPresent()) {
+            this.storeUndo(node.getBlockHash(), this.utxoSet.connectBlock(block.get(), node.getHeight()));
+        } else {
+            // The UTXO set stopped short of the tip, blocks from here on can not be checked against it
+            logger.error("Block at height {} was connected without checking its txns, the UTXO set is behind at height {}.",
+                    node.getHeight(), this.utxoSet.getHeight());
+        }
+        this.chainListeners.forEach(listener -> listener.blockConnected(node.getBlockHash(), node.getHeight()));
+    }
+
+    // Private function to apply the main chain blocks the UTXO set has not seen yet. The set can
+    // only be built from block bodies, so blocks that have been pruned are skipped.
+    private void catchUpUtxoSet() {
+        long fromHeight = this.utxoSet.getHeight() + 1;
+        long toHeight = this.getChainHeight();
+        if(fromHeight > toHeight) {
+            return;
+        }
+        if(fromHeight <= this.pruneHeight) {
+            logger.warn("Blocks up to height {} are pruned, the UTXO set will not include their outputs.", this.pruneHeight);
+            fromHeight = this.pruneHeight + 1;
+        }
+        logger.info("Applying blocks {} to {} to the UTXO set.", fromHeight, toHeight);
+        for(long height = fromHeight; height <= toHeight; height++) {
+            byte[] blockHash = this.chainHeights.get(height);
+            Optional<Block> block = blockHash == null ? Optional.empty() : this.coldBlocks.getBlock(blockHash);
+            if(block.isEmpty()) {
+                logger.error("Block at height {} is missing, the UTXO set stops there and later blocks will not be checked against it.", height);
+                break;
+            }
+            try {
+                this.storeUndo(blockHash, this.utxoSet.connectBlock(block.get(), height));
+            } catch (RuntimeException e) {
+                logger.error("Block at height {} can not be applied, the UTXO set stops there and later blocks will not be checked against it: {}", height, e.getMessage());
+                break;
+            }
+            if(this.utxoSet.getCoinsCache().shouldFlush()) {
+                this.commitWrites();
+            }
+        }
+        this.flushUtxoSet();
+        logger.info("The UTXO set holds {} unspent outputs at height {}.", this.utxoSet.size(), this.utxoSet.getHeight());
+    }
+
+    // Private function to store the undo record of a block, blocks that spent nothing do not need one
+    private void storeUndo(byte[] blockHash, BlockUndo undo) {
+        if(undo.size() > 0) {
+            this.blockUndo.put(blockHash, undo);
+        } else {
+            this.blockUndo.remove(blockHash);
+        }
     }
 
     /**
-     * Add a new block to the chain. This block will be written through to the archive, with a 10m
-     * expiration from the cache.
+     * Mark a block as invalid, rolling the main chain back to the block before it if the block
+     * is in the main chain. The blocks after it in the main chain are marked invalid as well, and
+     * blocks building on the block, on any branch, will be rejected.
      *
-     * @param block
+     * @param blockHash
      */
-    public void addBlock(Block block) throws Exception {
-        logger.trace("Received a block to evaluate for adding to the chain");
-        // Previous block
-        Block prevBlock = (Block) this.hotBlocks.get(block.getHeader().getPreviousBlockHash());
-        // If the block already exists, we throw an exception
-        if (((Block) this.hotBlocks.get(block.getBlockHash())) != null) throw new RuntimeException("Duplicate block!");
-        // If the previous block as indicated by the incoming block is not in the chain, throw an exception
-        if (prevBlock == null) throw new RuntimeException("Previous block not found");
-        // If the new block's time is too early, then throw an exception
-        if (prevBlock.getHeader().getTime().compareTo(block.getHeader().getTime()) >= 0) throw new RuntimeException("Block's timestamp too early");
-        // Check the proof of work
-
-        // Increment the blockHeight
-        block.setBlockHeight(prevBlock.getBlockHeight().add(BigInteger.ONE));
-        // The block is safe to be placed into the chain storage!
-        this.hotBlocks.put(block.getBlockHash(), block);
-        // Update the last block hash seen
-        this.lastBlockHash = block.getBlockHash();
+    public void invalidateBlock(byte[] blockHash) {
+        synchronized (commitLock) {
+            BlockIndexNode invalid = this.blockIndex.getNode(blockHash);
+            if(invalid == null) throw new RuntimeException("Block not found");
+            byte[] indexedHash = this.chainHeights.get(invalid.getHeight());
+            if(indexedHash != null && CryptoHasher.isEqualHashes(indexedHash, blockHash)) {
+                BlockIndexNode tip = this.blockIndex.getNode(this.lastBlockHash);
+                long disconnected = 0;
+                for(BlockIndexNode node = tip; node != null && node != invalid.getParent(); node = node.getParent()) {
+                    this.disconnectBlock(node);
+                    this.blockIndex.setStatus(node, BlockIndexNode.Status.FAILED);
+                    disconnected++;
+                }
+                BlockIndexNode newTip = invalid.getParent();
+                if(newTip != null) {
+                    this.rebuildDifficultyWindow(newTip);
+                    this.lastBlockHash = newTip.getBlockHash();
+                    this.cumulativeWork = newTip.getCumulativeWork();
+                    this.blockchainState.put("lastBlockHash", this.lastBlockHash);
+                }
+                this.flushUtxoSet();
+                logger.info("Invalidated block {}, rolled back {} blocks to height {}.", CryptoHasher.humanReadableHash(blockHash), disconnected, invalid.getHeight() - 1);
+            } else {
+                this.blockIndex.setStatus(invalid, BlockIndexNode.Status.FAILED);
+                logger.info("Invalidated block {} on a side branch.", CryptoHasher.humanReadableHash(blockHash));
+            }
+            this.recordWrite();
+        }
+    }
+
+    // Private function to write the changes held in the coins cache to the chain database, along
+    // with the height they are as of. Called before a commit, so the two are committed together.
+    private void flushUtxoSet() {
+        long written = this.utxoSet.flush();
+        this.putStateLong("utxoHeight", this.utxoSet.getFlushedHeight());
+        logger.debug("Flushed {} unspent output changes at height {}.", written, this.utxoSet.getFlushedHeight());
+    }
+
+    /**
+     * Returns the counters of the unspent output cache, for reporting, along with the height of
+     * the UTXO set and how many main chain blocks it is behind. A set that is behind can not
+     * check the txns of the blocks connected after it.
+     *
+     * @return stats
+     */
+    @JsonIgnore
+    public Map<String, Long> getCoinsCacheStats() {
+        Map<String, Long> stats = this.utxoSet.getCoinsCache().getStats();
+        stats.put("utxoHeight", this.utxoSet.getHeight());
+        stats.put("utxoBehind", Math.max(this.getChainHeight() - this.utxoSet.getHeight(), 0));
+        return stats;
+    }
+
+    /**
+     * Returns whether the UTXO set is applied up to the tip of the main chain, so that the
+     * blocks being connected have their txns checked against it.
+     *
+     * @return utxoSetCurrent
+     */
+    @JsonIgnore
+    public boolean isUtxoSetCurrent() {
+        return this.utxoSet.getHeight() >= this.getChainHeight();
+    }
+
+    /**
+     * Returns the unspent outputs of the main chain.
+     *
+     * @return utxoSet
+     */
+    @JsonIgnore
+    public UtxoSet getUtxoSet() {
+        return this.utxoSet;
+    }
+
+    /**
+     * Returns the chain database, for the indexes built from the chain to keep their storage in.
+     *
+     * @return database
+     */
+    @JsonIgnore
+    public DB getDatabase() {
+        return this.database;
+    }
+
+    /**
+     * Register a listener for the blocks connected to and disconnected from the main chain.
+     *
+     * @param listener
+     */
+    public void addChainListener(ChainListener listener) {
+        this.chainListeners.add(listener);
     }
 
     /**
-     * Add multiple blocks to the chain. These blocks will be written through to the archive, with a 10m
-     * expiration from the cache.
+     * Compress the next batch of main chain blocks that have more confirmations than the
+     * compression threshold and have not been compressed yet. The blocks are compressed one at
+     * a time, so that adding blocks is not held up behind a whole batch.
+     */
+    public void compressColdBlocks() {
+        if(_COMPRESS_AFTER <= 0) {
+            return;
+        }
+        long fromHeight = this.getStateLong("compressedHeight", -1L) + 1;
+        long toHeight = Math.min(this.getChainHeight() - _COMPRESS_AFTER, fromHeight + _COMPRESS_BATCH - 1);
+        long compressed = 0;
+        long rawBytes = 0;
+        long storedBytes = 0;
+        for(long height = fromHeight; height <= toHeight; height++) {
+            synchronized (commitLock) {
+                // A reorganization may have moved the compressed height back in the meantime
+                if(this.getStateLong("compressedHeight", -1L) != height - 1) {
+                    break;
+                }
+                byte[] blockHash = this.chainHeights.get(height);
+                long rawSize = blockHash == null ? -1 : this.coldBlocks.getBlockSize(blockHash);
+                if(rawSize < 0) {
+                    logger.warn("Block at height {} is missing, blocks cannot be compressed past it.", height);
+                    break;
+                }
+                long storedSize = this.coldBlocks.compressBlock(blockHash);
+                this.putStateLong("compressedHeight", height);
+                // The counters move with the compressed height, so a reorganization can take the block back out
+                if(storedSize < rawSize) {
+                    this.compressedSizes.put(blockHash, new long[]{rawSize, storedSize});
+                    this.putStateLong("compressedBlocks", this.getStateLong("compressedBlocks", 0L) + 1);
+                    this.putStateLong("compressedRawBytes", this.getStateLong("compressedRawBytes", 0L) + rawSize);
+                    this.putStateLong("compressedBytes", this.getStateLong("compressedBytes", 0L) + storedSize);
+                    compressed++;
+                    rawBytes += rawSize;
+                    storedBytes += storedSize;
+                }
+                this.recordWrite();
+            }
+        }
+        if(compressed > 0) {
+            this.commitWrites();
+            this.coldBlocks.compact();
+            logger.info("Compressed {} blocks up to height {}, {} bytes down to {} bytes.", compressed,
+                    this.getStateLong("compressedHeight", -1L), rawBytes, storedBytes);
+        }
+    }
+
+    /**
+     * Returns the counters of the compressed tier of the archive. The ratio is the compressed
+     * size as a percentage of the uncompressed size.
+     *
+     * @return compressionStats
+     */
+    @JsonIgnore
+    public Map<String, Long> getCompressionStats() {
+        long rawBytes = this.getStateLong("compressedRawBytes", 0L);
+        long storedBytes = this.getStateLong("compressedBytes", 0L);
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("compressedHeight", this.getStateLong("compressedHeight", -1L));
+        stats.put("compressedBlocks", this.getStateLong("compressedBlocks", 0L));
+        stats.put("rawBytes", rawBytes);
+        stats.put("compressedBytes", storedBytes);
+        stats.put("savedBytes", rawBytes - storedBytes);
+        stats.put("ratio", rawBytes == 0 ? 100 : storedBytes * 100 / rawBytes);
+        return stats;
+    }
+
+    // Private function to refill the difficulty window from the block index after a reorganization,
+    // walking back from the new tip for the size of the window
+    private void rebuildDifficultyWindow(BlockIndexNode tip) {
+        Deque<BlockIndexNode> window = new ArrayDeque<>();
+        for(BlockIndexNode node = tip; node != null && window.size() <= _BLOCK_SOLVE_WINDOW; node = node.getParent()) {
+            window.push(node);
+        }
+        this.difficultyWindow.clear();
+        for(BlockIndexNode node : window) {
+            this.difficultyWindow.addBlock(node.getHeight(), node.getEpochTime());
+        }
+    }
+
+    /**
+     * Returns the block index tree of every known block.
+     *
+     * @return blockIndex
+     */
+    @JsonIgnore
+    public BlockIndex getBlockIndex() {
+        return this.blockIndex;
+    }
+
+    /**
+     * Add multiple blocks to the chain. These blocks will be written through to the archive and kept
+     * in the cache until they are evicted. The blocks are indexed as headers only, they do not become
+     * part of the main chain until their full block is added.
      *
      * @param blocks
      * @throws CloneNotSupportedException
      */
     public void addBlocks(List<Block> blocks) throws CloneNotSupportedException {
-        for(Block b : blocks) {
-            this.hotBlocks.put(b.getBlockHash(), b);
+        synchronized (commitLock) {
+            for(Block b : blocks) {
+                if(this.blockIndex.getNode(b.getBlockHash()) != null) {
+                    continue;
+                }
+                BlockIndexNode parent = this.blockIndex.getNode(b.getHeader().getPreviousBlockHash());
+                if(parent == null) {
+                    logger.debug("Skipping header {}, the previous block is not known.", b);
+                    continue;
+                }
+                if(this.getBranchStatus(parent) == BlockIndexNode.Status.FAILED) {
+                    logger.debug("Skipping header {}, a previous block failed validation.", b);
+                    continue;
+                }
+                b.setBlockHeight(BigInteger.valueOf(parent.getHeight() + 1));
+                this.coldBlocks.putBlock(b.getBlockHash(), b);
+                this.hotBlocks.put(ByteBuffer.wrap(b.getBlockHash()), b);
+                this.blockIndex.addNode(b.getHeader(), b.getBlockHash(), parent.getHeight() + 1, BlockIndexNode.Status.HEADER_VALID);
+                this.recordWrite();
+            }
+        }
+    }
+
+    /**
+     * Commit the pending block writes to the chain database. Block segments are forced to
+     * disk first, so that the committed index never points to data that is not on disk.
+     */
+    public void commitWrites() {
+        synchronized (commitLock) {
+            this.coldBlocks.flush();
+            if(this.utxoSet.getCoinsCache().shouldFlush()) {
+                this.flushUtxoSet();
+            }
+            this.database.commit();
+            if(this.pendingWrites > 0) {
+                logger.trace("Committed a batch of {} block writes.", this.pendingWrites);
+            }
+            this.pendingWrites = 0;
+        }
+    }
+
+    // Private function to count a block write in the current batch, committing the batch once it is full
+    private void recordWrite() {
+        if(this.pendingWrites++ == 0) {
+            this.oldestPendingWrite = System.currentTimeMillis();
+        }
+        if(this.pendingWrites >= _COMMIT_BATCH_SIZE) {
+            this.commitWrites();
+        }
+    }
+
+    /**
+     * Count a write made to the chain database outside of adding blocks, such as an index
+     * update, so that it is committed with the current batch.
+     */
+    public void recordIndexWrite() {
+        synchronized (commitLock) {
+            this.recordWrite();
+        }
+    }
+
+    // Private function to commit the current batch once its oldest write has waited long enough
+    private void commitIfDue() {
+        try {
+            synchronized (commitLock) {
+                if(this.pendingWrites > 0 && System.currentTimeMillis() - this.oldestPendingWrite >= _COMMIT_LATENCY) {
+                    this.commitWrites();
+                }
+            }
+        } catch (Exception e) {
+            logger.error("There was an issue committing block writes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns whether the full block (not just its header) has been stored, checked against the
+     * in-memory block index without reading the block.
+     *
+     * @param blockHash
+     * @return hasBlock
+     */
+    public boolean hasBlock(byte[] blockHash) {
+        if(blockHash == null) {
+            return false;
         }
+        BlockIndexNode node = this.blockIndex.getNode(blockHash);
+        return node != null && node.getStatus() == BlockIndexNode.Status.DATA_STORED;
     }
 
     /**
@@ -229,7 +1104,79 @@ public class Blockchain implements Cloneable {
      * @return block
      */
     public Optional<Block> getBlock(byte[] blockHash) {
-        return Optional.ofNullable((Block) this.hotBlocks.get(blockHash));
+        if(blockHash == null) {
+            return Optional.empty();
+        }
+        Block block = this.hotBlocks.get(ByteBuffer.wrap(blockHash));
+        if(block != null) {
+            return Optional.of(block);
+        }
+        // Not recently used, read it from the archive and put it back in the cache
+        Optional<Block> archived = this.coldBlocks.getBlock(blockHash);
+        archived.ifPresent(b -> this.hotBlocks.put(ByteBuffer.wrap(blockHash), b));
+        return archived;
+    }
+
+    /**
+     * Get a block by block hash without putting it in the cache, for walking through stored
+     * blocks without pushing the recently used blocks out of the cache.
+     *
+     * @param blockHash
+     * @return block
+     */
+    public Optional<Block> readBlock(byte[] blockHash) {
+        if(blockHash == null) {
+            return Optional.empty();
+        }
+        Block cached = this.hotBlocks.get(ByteBuffer.wrap(blockHash));
+        return cached != null ? Optional.of(cached) : this.coldBlocks.getBlock(blockHash);
+    }
+
+    /**
+     * Get a confirmed transaction in the main chain by its hash. Only available when the
+     * transaction index is enabled.
+     *
+     * @param txnHash
+     * @return transaction
+     */
+    public Optional<Transaction> getTransaction(byte[] txnHash) {
+        if(this.txIndex == null || txnHash == null) {
+            return Optional.empty();
+        }
+        Optional<TransactionIndex.Location> location = this.txIndex.getLocation(txnHash);
+        if(location.isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<Block> block = this.getBlock(location.get().getBlockHash());
+        if(block.isEmpty() || block.get().getData() == null || location.get().getPosition() >= block.get().getData().size()) {
+            return Optional.empty();
+        }
+        Transaction txn = block.get().getData().get(location.get().getPosition());
+        return txn.compareTxnHash(txnHash) ? Optional.of(txn) : Optional.empty();
+    }
+
+    /**
+     * Build the proof that a txn is in a stored block. Empty when the block is not stored, does
+     * not contain the txn, has had its txns pruned, or was built before the merkle tree that
+     * proofs are checked against.
+     *
+     * @param blockHash
+     * @param txnHash
+     * @return proof
+     */
+    public Optional<MerkleProof> getMerkleProof(byte[] blockHash, byte[] txnHash) {
+        Optional<Block> block = this.getBlock(blockHash);
+        if(txnHash == null || block.isEmpty() || block.get().getHeader() == null || block.get().getData() == null
+                || block.get().getHeader().getVersion() < MerkleTree.FIRST_BLOCK_VERSION) {
+            return Optional.empty();
+        }
+        List<Transaction> txns = block.get().getData();
+        for(int i = 0; i < txns.size(); i++) {
+            if(txns.get(i).compareTxnHash(txnHash)) {
+                return Optional.of(MerkleTree.build(txns, true).getProof(i));
+            }
+        }
+        return Optional.empty();
     }
 
     /**
@@ -239,7 +1186,191 @@ public class Blockchain implements Cloneable {
      */
     @JsonIgnore
     public Optional<Block> getLastBlock() {
-        return Optional.ofNullable((Block) this.hotBlocks.get(this.lastBlockHash));
+        return this.getBlock(this.lastBlockHash);
+    }
+
+    /**
+     * Get the height of the last block indexed in the main chain, or -1 if no
+     * blocks have been indexed.
+     *
+     * @return chainHeight
+     */
+    @JsonIgnore
+    public long getChainHeight() {
+        return this.chainHeights.isEmpty() ? -1 : this.chainHeights.lastKey();
+    }
+
+    /**
+     * Get the hash of the block in the main chain at the given height.
+     *
+     * @param height
+     * @return blockHash
+     */
+    public Optional<byte[]> getBlockHashAtHeight(long height) {
+        return Optional.ofNullable(this.chainHeights.get(height));
+    }
+
+    /**
+     * Get the block in the main chain at the given height.
+     *
+     * @param height
+     * @return block
+     */
+    public Optional<Block> getBlockAtHeight(long height) {
+        byte[] blockHash = this.chainHeights.get(height);
+        if(blockHash == null) {
+            return Optional.empty();
+        }
+        return this.getBlock(blockHash);
+    }
+
+    /**
+     * Iterate over the blocks in the main chain between two heights (both inclusive), in
+     * ascending order of height. Each block is only read when the iterator reaches it, and
+     * blocks read from the archive are not put in the cache, so walking a long range neither
+     * holds the range in memory nor pushes the recently used blocks out of the cache. The range
+     * ends at the tip; a height below the tip that is not indexed, or whose block can not be
+     * read, fails the iteration rather than being skipped.
+     *
+     * @param fromHeight
+     * @param toHeight
+     * @return blocks
+     */
+    public Iterator<Block> iterateBlockRange(long fromHeight, long toHeight) {
+        long lastHeight = Math.min(toHeight, this.getChainHeight());
+        if(fromHeight > lastHeight) {
+            return Collections.emptyIterator();
+        }
+        return new Iterator<>() {
+            private long height = fromHeight;
+            private Block next;
+
+            @Override
+            public boolean hasNext() {
+                if(this.next == null && this.height <= lastHeight) {
+                    byte[] blockHash = chainHeights.get(this.height);
+                    this.next = readBlock(blockHash).orElseThrow(() ->
+                            new BlockStoreException("The block at height " + this.height + " of the main chain is missing."));
+                    this.height++;
+                }
+                return this.next != null;
+            }
+
+            @Override
+            public Block next() {
+                if(!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Block block = this.next;
+                this.next = null;
+                return block;
+            }
+        };
+    }
+
+    /**
+     * Returns the height up to which block bodies have been pruned, or -1 if no
+     * blocks have been pruned.
+     *
+     * @return pruneHeight
+     */
+    @JsonIgnore
+    public long getPruneHeight() {
+        return this.pruneHeight;
+    }
+
+    /**
+     * Check if the txns of a block have been pruned, leaving only its header.
+     *
+     * @param block
+     * @return isPruned
+     */
+    public boolean isBodyPruned(Block block) {
+        return block.getBlockHeight() != null && block.getBlockHeight().longValue() <= this.pruneHeight;
+    }
+
+    /**
+     * Discard the txns of blocks older than the prune target, keeping the headers and
+     * the height index. The blocks are rewritten in the archive as header only blocks,
+     * and the archive is compacted afterwards.
+     */
+    public void pruneBlocks() throws Exception {
+        // The rewrite runs under the commit lock, so it can not interleave with blocks being added
+        // or the chain being reorganized
+        synchronized (commitLock) {
+            long tipHeight = this.getChainHeight();
+            long pruneTo = tipHeight - this.getPruneRetention();
+            if(pruneTo <= this.pruneHeight) {
+                return;
+            }
+            long pruned = 0;
+            for(long height = Math.max(this.pruneHeight + 1, this.chainHeights.firstKey()); height <= pruneTo; height++) {
+                // Read through, so that old blocks being pruned do not push recent ones out of the cache
+                Optional<Block> block = this.readBlock(this.chainHeights.get(height));
+                if(block.isPresent() && block.get().getData() != null && !block.get().getData().isEmpty()) {
+                    Block header = Block.Builder.builder()
+                            .setBlockHeader(block.get().getHeader())
+                            .setBlockHeight(block.get().getBlockHeight())
+                            .setBlockHash(block.get().getBlockHash())
+                            .setData(new ArrayList<>())
+                            .build();
+                    this.coldBlocks.putBlock(header.getBlockHash(), header);
+                    this.hotBlocks.remove(ByteBuffer.wrap(header.getBlockHash()));
+                    this.blockUndo.remove(header.getBlockHash());
+                    pruned++;
+                }
+            }
+            this.pruneHeight = pruneTo;
+            this.putStateLong("pruneHeight", this.pruneHeight);
+            this.commitWrites();
+            this.coldBlocks.compact();
+            logger.info("Pruned the bodies of {} blocks up to height {}.", pruned, this.pruneHeight);
+        }
+    }
+
+    // The number of blocks behind the tip to keep the bodies of. A target in MB is turned into
+    // a number of blocks using the average stored size of the most recent blocks.
+    private long getPruneRetention() {
+        long retention = Math.max(_PRUNE_MIN_BLOCKS, _PRUNE_TARGET_BLOCKS);
+        if(_PRUNE_TARGET_MB > 0) {
+            long tipHeight = this.getChainHeight();
+            long sampled = 0;
+            long sampledBytes = 0;
+            for(byte[] blockHash : this.chainHeights.subMap(Math.max(this.pruneHeight + 1, tipHeight - _PRUNE_SIZE_SAMPLE), true, tipHeight, true).values()) {
+                long size = this.coldBlocks.getBlockSize(blockHash);
+                if(size > 0) {
+                    sampled++;
+                    sampledBytes += size;
+                }
+            }
+            if(sampledBytes > 0) {
+                retention = Math.max(retention, (_PRUNE_TARGET_MB * 1024 * 1024) / (sampledBytes / sampled));
+            }
+        }
+        return retention;
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the block cache.
+     *
+     * @return cacheStats
+     */
+    @JsonIgnore
+    public Map<String, Long> getCacheStats() {
+        return this.hotBlocks.getStats();
+    }
+
+    // Estimate the in-memory size of a decoded block for weighing it in the cache
+    private static long estimateBlockSize(Block block) {
+        long size = _BLOCK_BASE_SIZE;
+        if(block.getData() != null) {
+            for(Transaction txn : block.getData()) {
+                size += _TXN_BASE_SIZE;
+                size += _TXN_IO_SIZE * ((txn.getTxnInputs() == null ? 0 : txn.getTxnInputs().length)
+                        + (txn.getTxnOutPuts() == null ? 0 : txn.getTxnOutPuts().length));
+            }
+        }
+        return size;
     }
 
     private boolean compareBlockHash(byte[] frstBlck, byte[] sndBlck) {
@@ -256,26 +1387,41 @@ public class Blockchain implements Cloneable {
     }
 
     /**
-     * Check if the chain is valid by comparing the block hashes and if they are connected
+     * Verify the blocks of the main chain between two heights (both inclusive). Blocks are read
+     * straight from the archive, so verifying does not push other blocks out of the cache. Block
+     * bodies that have been pruned are not verified.
      *
-     * @param chain
-     * @return isValid
-     * @throws Exception
+     * @param fromHeight
+     * @param toHeight
+     * @return result
      */
-    public static boolean isValidChain(HashMap<byte[], Block> chain) throws Exception {
-        List<Block> chainBlocks = (List<Block>) chain.values();
-        if(!chainBlocks.get(0).toString().contentEquals(Block.genesis().toString())){
-            return false;
-        }
-        for(int i = 1; i < chainBlocks.size(); i++){
-            Block b0 = chainBlocks.get(i-1);
-            Block b1 = chainBlocks.get(i);
-            if(!CryptoHasher.humanReadableHash(b1.getHeader().getPreviousBlockHash()).contentEquals(CryptoHasher.humanReadableHash(b0.getBlockHash())) ||
-                    !CryptoHasher.humanReadableHash(b1.getBlockHash()).contentEquals(CryptoHasher.humanReadableHash(CryptoHasher.hash(b1.getHeader())))){
-                return false;
+    public ChainVerifier.Result verifyChain(long fromHeight, long toHeight) {
+        fromHeight = Math.max(fromHeight, Math.max(this.pruneHeight + 1, 0));
+        toHeight = Math.min(toHeight, this.getChainHeight());
+        logger.info("Verifying the chain from height {} to {}.", fromHeight, toHeight);
+        ChainVerifier.Result result = this.chainVerifier.verify((from, to) -> {
+            List<Block> blocks = new ArrayList<>();
+            for(byte[] blockHash : this.chainHeights.subMap(from, true, to, true).values()) {
+                this.coldBlocks.getBlock(blockHash).ifPresent(blocks::add);
             }
+            return blocks;
+        }, fromHeight, toHeight, this.chainHeights.get(fromHeight - 1));
+        if(result.isValid()) {
+            logger.info("Verified {} blocks in {} ms ({} blocks/s).", result.getBlocksVerified(), result.getElapsedMillis(), result.getBlocksPerSecond());
+        } else {
+            logger.warn("Chain verification failed at height {}: {}", result.getFailedIndex(), result.getReason());
         }
-        return true;
+        return result;
+    }
+
+    /**
+     * Returns the progress of the current (or last) chain verification.
+     *
+     * @return progress
+     */
+    @JsonIgnore
+    public Map<String, Long> getVerifyProgress() {
+        return this.chainVerifier.getProgress();
     }
 
     /**
@@ -289,6 +1435,21 @@ public class Blockchain implements Cloneable {
         return super.clone();
     }
 
+    /**
+     * Returns the average time (in seconds) between the blocks in the difficulty window.
+     *
+     * @return averageSolveTime
+     */
+    @JsonIgnore
+    public long getAverageSolveTime() {
+        int window = this.difficultyWindow.getSolveCount();
+        long averageTime = 1 + this.difficultyWindow.getTotalSolveTime();
+        if(window > 0) {
+            averageTime = averageTime / window;
+        }
+        return averageTime;
+    }
+
     /**
      * Calculate the hashing difficulty based on the solve time between the number
      * of blocks in the block window, with the target time of 14 minutes between blocks.
@@ -296,25 +1457,7 @@ public class Blockchain implements Cloneable {
      * @return
      */
     protected int calculateDifficulty() {
-        int window = this._BLOCK_SOLVE_WINDOW;
-        if(this.coldBlocks.size() < this._BLOCK_SOLVE_WINDOW) {
-            window = this.coldBlocks.size();
-        }
-        Block lastBlock = this.getBlock(this.lastBlockHash).get();
-        int averageTime = 1;
-        int bIndex = 0;
-        while(bIndex <= window) {
-            Block nextLast = null;
-            if(lastBlock.getHeader().getPreviousBlockHash() != null) {
-                nextLast = this.getBlock(lastBlock.getHeader().getPreviousBlockHash()).get();
-                averageTime = averageTime + ((int) (lastBlock.getHeader().getEpochTime() - nextLast.getHeader().getEpochTime()));
-            }
-            bIndex++;
-        }
-        if(window != 0) {
-            averageTime = averageTime / window;
-        }
-        if(averageTime > _BLOCK_SOLVE_TIME) {
+        if(this.getAverageSolveTime() > _BLOCK_SOLVE_TIME) {
             this._BASE_DIFFICULTY -= 1;
             return this._BASE_DIFFICULTY;
         } else {
@@ -0,0 +1,339 @@
+package org.yggdrasil.core.ledger.chain;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import org.yggdrasil.core.serialization.BlockSerializer;
+import org.yggdrasil.node.network.NodeConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Exports a range of the main chain to a bootstrap file, and imports the blocks of a bootstrap
+ * file into the chain, so that a new node can be seeded from a file rather than fetching the
+ * chain from its peers a block at a time.
+ *
+ * A bootstrap file is a header (the magic bytes, the file format version and the network the
+ * blocks belong to) followed by one record per block, in ascending order of height. A record
+ * is the length of the encoded block followed by the block written with the
+ * {@link BlockSerializer}.
+ *
+ * Importing reads the file sequentially through a large buffer on a separate thread, which
+ * decodes and verifies each batch of blocks in parallel while the previous batch is added to
+ * the chain. Blocks are added through {@link Blockchain#addBlock(Block)}, the same path as
+ * blocks received from peers, and blocks that are already stored are skipped, so an import
+ * that was interrupted can be run again.
+ *
+ * Both run on startup when configured, for example with
+ * --blockchain.bootstrap.import=bootstrap.dat on the command line.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+@Component
+public class ChainBootstrap implements ApplicationRunner {
+
+    private final Logger logger = LoggerFactory.getLogger(ChainBootstrap.class);
+
+    // The first bytes of every bootstrap file
+    private static final byte[] _MAGIC = "YGGB".getBytes(StandardCharsets.US_ASCII);
+    private static final int _FORMAT_VERSION = 1;
+    // The size of the buffers used for reading and writing bootstrap files
+    private static final int _IO_BUFFER_SIZE = 8 * 1024 * 1024;
+    // The number of blocks decoded, verified and added at a time when importing
+    private static final int _IMPORT_BATCH_SIZE = 1024;
+    // The number of decoded batches waiting to be added to the chain
+    private static final int _IMPORT_QUEUE_SIZE = 2;
+    // The largest block record that is accepted from a bootstrap file
+    private static final int _MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    // The least time (in milliseconds) between progress reports
+    private static final long _PROGRESS_INTERVAL = 5000;
+
+    // The file to export the main chain to on startup, empty to not export.
+    @Value("${blockchain.bootstrap.export:}")
+    private String _EXPORT_FILE;
+    // The first height to export.
+    @Value("${blockchain.bootstrap.from-height:0}")
+    private Long _EXPORT_FROM;
+    // The last height to export, -1 for the tip of the main chain.
+    @Value("${blockchain.bootstrap.to-height:-1}")
+    private Long _EXPORT_TO;
+    // The file to import blocks from on startup, empty to not import.
+    @Value("${blockchain.bootstrap.import:}")
+    private String _IMPORT_FILE;
+    // Stop the node once the export or import has finished.
+    @Value("${blockchain.bootstrap.exit:false}")
+    private Boolean _EXIT;
+    // The number of threads used for decoding and verifying imported blocks, 0 to use one per core.
+    @Value("${blockchain.verify.threads:0}")
+    private Integer _THREADS;
+
+    @Autowired
+    private Blockchain blockchain;
+    @Autowired
+    private NodeConfig nodeConfig;
+    @Autowired
+    private ApplicationContext context;
+
+    private final BlockSerializer serializer = new BlockSerializer();
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if(_EXPORT_FILE.isEmpty() && _IMPORT_FILE.isEmpty()) {
+            return;
+        }
+        int exitCode = 0;
+        try {
+            if(!_EXPORT_FILE.isEmpty()) {
+                this.exportChain(Path.of(_EXPORT_FILE), _EXPORT_FROM, _EXPORT_TO < 0 ? this.blockchain.getChainHeight() : _EXPORT_TO);
+            }
+            if(!_IMPORT_FILE.isEmpty()) {
+                this.importChain(Path.of(_IMPORT_FILE));
+            }
+        } catch (Exception e) {
+            logger.error("The chain bootstrap did not complete: {}", e.getMessage());
+            exitCode = 1;
+        }
+        if(_EXIT) {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(this.context, () -> code));
+        }
+    }
+
+    /**
+     * Write the blocks of the main chain between two heights (both inclusive) to a bootstrap
+     * file. The file is written next to its final location and moved into place once it is
+     * complete, so a partial export is never mistaken for a complete one.
+     *
+     * @param file
+     * @param fromHeight
+     * @param toHeight
+     * @return the number of blocks written
+     * @throws IOException
+     */
+    public long exportChain(Path file, long fromHeight, long toHeight) throws IOException {
+        if(fromHeight <= this.blockchain.getPruneHeight()) {
+            throw new RuntimeException("The bodies of the blocks up to height " + this.blockchain.getPruneHeight() + " have been pruned and cannot be exported.");
+        }
+        logger.info("Exporting the main chain from height {} to {} to {}.", fromHeight, toHeight, file);
+        long startTime = System.currentTimeMillis();
+        long lastReport = startTime;
+        long exported = 0;
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial), _IO_BUFFER_SIZE))) {
+            out.write(_MAGIC);
+            out.writeByte(_FORMAT_VERSION);
+            out.writeUTF(nodeConfig.getNetwork().getValue());
+            DataOutput2 record = new DataOutput2();
+            Iterator<Block> blocks = this.blockchain.iterateBlockRange(fromHeight, toHeight);
+            while(blocks.hasNext()) {
+                record.pos = 0;
+                this.serializer.serialize(record, blocks.next());
+                out.writeInt(record.pos);
+                out.write(record.buf, 0, record.pos);
+                exported++;
+                if(System.currentTimeMillis() - lastReport >= _PROGRESS_INTERVAL) {
+                    lastReport = System.currentTimeMillis();
+                    logger.info("Exported {} blocks, {} MB.", exported, out.size() / (1024 * 1024));
+                }
+            }
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        long elapsed = Math.max(System.currentTimeMillis() - startTime, 1);
+        logger.info("Exported {} blocks to {} in {} ms ({} blocks/s).", exported, file, elapsed, exported * 1000 / elapsed);
+        return exported;
+    }
+
+    /**
+     * Add the blocks of a bootstrap file to the chain. Blocks that are already stored are
+     * skipped, and the import stops at the first block that fails verification or cannot be
+     * added to the chain.
+     *
+     * @param file
+     * @return the number of blocks added
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public long importChain(Path file) throws IOException, InterruptedException {
+        logger.info("Importing blocks from {}.", file);
+        long startTime = System.currentTimeMillis();
+        long lastReport = startTime;
+        long imported = 0;
+        long skipped = 0;
+        BlockingQueue<ImportBatch> batches = new ArrayBlockingQueue<>(_IMPORT_QUEUE_SIZE);
+        ForkJoinPool decodePool = new ForkJoinPool(_THREADS > 0 ? _THREADS : Runtime.getRuntime().availableProcessors());
+        ChainVerifier verifier = new ChainVerifier(_THREADS);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), _IO_BUFFER_SIZE))) {
+            this.readHeader(in);
+            Thread reader = new Thread(() -> this.readBatches(in, decodePool, verifier, batches), "bootstrap-reader");
+            reader.setDaemon(true);
+            reader.start();
+            while(true) {
+                ImportBatch batch = batches.take();
+                for(Block block : batch.blocks) {
+                    if(this.blockchain.hasBlock(block.getBlockHash())) {
+                        skipped++;
+                        continue;
+                    }
+                    try {
+                        this.blockchain.addBlock(block);
+                    } catch (Exception e) {
+                        reader.interrupt();
+                        throw new RuntimeException("Block " + block + " could not be added to the chain: " + e.getMessage(), e);
+                    }
+                    imported++;
+                }
+                if(batch.error != null) {
+                    throw new RuntimeException(batch.error);
+                }
+                if(batch.last) {
+                    break;
+                }
+                if(System.currentTimeMillis() - lastReport >= _PROGRESS_INTERVAL) {
+                    lastReport = System.currentTimeMillis();
+                    logger.info("Imported {} blocks ({} already stored), the chain is at height {}.", imported, skipped, this.blockchain.getChainHeight());
+                }
+            }
+        } finally {
+            decodePool.shutdown();
+            verifier.shutdown();
+            this.blockchain.commitWrites();
+        }
+        long elapsed = Math.max(System.currentTimeMillis() - startTime, 1);
+        logger.info("Imported {} blocks ({} already stored) in {} ms ({} blocks/s), the chain is at height {}.",
+                imported, skipped, elapsed, (imported + skipped) * 1000 / elapsed, this.blockchain.getChainHeight());
+        return imported;
+    }
+
+    // Check the header of a bootstrap file
+    private void readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[_MAGIC.length];
+        in.readFully(magic);
+        if(!Arrays.equals(magic, _MAGIC)) {
+            throw new IOException("Not a bootstrap file.");
+        }
+        int version = in.readUnsignedByte();
+        if(version != _FORMAT_VERSION) {
+            throw new IOException("Unsupported bootstrap file version: " + version);
+        }
+        String network = in.readUTF();
+        if(!network.equals(nodeConfig.getNetwork().getValue())) {
+            throw new IOException("The bootstrap file is for the " + network + " network, this node is on " + nodeConfig.getNetwork().getValue() + ".");
+        }
+    }
+
+    // Read, decode and verify the blocks of a bootstrap file a batch at a time, handing each batch
+    // to the importing thread. Runs on its own thread until the end of the file or an error.
+    private void readBatches(DataInputStream in, ForkJoinPool decodePool, ChainVerifier verifier, BlockingQueue<ImportBatch> batches) {
+        byte[] previousBlockHash = null;
+        try {
+            boolean last = false;
+            while(!last) {
+                List<byte[]> records = new ArrayList<>(_IMPORT_BATCH_SIZE);
+                while(records.size() < _IMPORT_BATCH_SIZE) {
+                    byte[] record = this.readRecord(in);
+                    if(record == null) {
+                        last = true;
+                        break;
+                    }
+                    records.add(record);
+                }
+                List<Block> blocks = decodePool.submit(() -> records.parallelStream()
+                        .map(this::decode)
+                        .collect(Collectors.toList())).get();
+                ChainVerifier.Result result = verifier.verify(blocks, previousBlockHash);
+                if(!result.isValid()) {
+                    batches.put(new ImportBatch(blocks.subList(0, (int) result.getFailedIndex()), true,
+                            "Block " + blocks.get((int) result.getFailedIndex()) + " failed verification: " + result.getReason()));
+                    return;
+                }
+                if(!blocks.isEmpty()) {
+                    previousBlockHash = blocks.get(blocks.size() - 1).getBlockHash();
+                }
+                batches.put(new ImportBatch(blocks, last, null));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | ExecutionException | RuntimeException e) {
+            // Any failure has to reach the importing thread as an error batch, or it waits forever
+            try {
+                batches.put(new ImportBatch(List.of(), true, "Unable to read the bootstrap file: " + e.getMessage()));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Read the next block record, or null at the end of the file. A record cut short by the end
+    // of the file is treated as the end of the file, as it is what an interrupted export leaves.
+    private byte[] readRecord(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if(length <= 0 || length > _MAX_RECORD_SIZE) {
+            throw new IOException("Block record of " + length + " bytes is not valid.");
+        }
+        byte[] record = new byte[length];
+        try {
+            in.readFully(record);
+        } catch (EOFException e) {
+            logger.warn("The bootstrap file ends part way through a block, ignoring the last block.");
+            return null;
+        }
+        return record;
+    }
+
+    private Block decode(byte[] record) {
+        try {
+            return this.serializer.deserialize(new DataInput2.ByteArray(record), record.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class ImportBatch {
+        // The blocks of the batch that can be added to the chain
+        private final List<Block> blocks;
+        // There are no more batches after this one
+        private final boolean last;
+        // The reason the import has to stop after this batch, null if it does not
+        private final String error;
+
+        private ImportBatch(List<Block> blocks, boolean last, String error) {
+            this.blocks = blocks;
+            this.last = last;
+            this.error = error;
+        }
+    }
+
+}
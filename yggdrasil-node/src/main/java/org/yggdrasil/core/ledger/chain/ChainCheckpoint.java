@@ -0,0 +1,310 @@
+package org.yggdrasil.core.ledger.chain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A checkpoint of the state of the chain tip: the tip hash and height, the cumulative work
+ * of the main chain, the difficulty and its window, and the watermarks of anything indexed
+ * against the chain. Checkpoints let the blockchain resume from its last known state after
+ * a restart (or a crash), only replaying the blocks that were added after the checkpoint.
+ *
+ * Checkpoints are written as sidecar files, each followed by a CRC32 of its contents. A
+ * checkpoint is written to a temporary file, forced to disk and then atomically moved into
+ * place, so a checkpoint file is either complete or not there at all. Checkpoint files are
+ * numbered in the order they are written, so the newest checkpoint is the last one written,
+ * even when the chain was reorganized to a lower tip in between.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public final class ChainCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChainCheckpoint.class);
+
+    // Identifies a checkpoint file ("YGGC")
+    private static final int _MAGIC = 0x59474743;
+    private static final int _FORMAT_VERSION = 1;
+    private static final String _FILE_PREFIX = "checkpoint-";
+    private static final String _FILE_SUFFIX = ".0x";
+
+    private final long tipHeight;
+    private final byte[] tipHash;
+    private final BigInteger cumulativeWork;
+    private final int baseDifficulty;
+    private final long[] difficultyWindow;
+    private final Map<String, Long> watermarks;
+
+    private ChainCheckpoint(Builder builder) {
+        this.tipHeight = builder.tipHeight;
+        this.tipHash = builder.tipHash;
+        this.cumulativeWork = builder.cumulativeWork;
+        this.baseDifficulty = builder.baseDifficulty;
+        this.difficultyWindow = builder.difficultyWindow;
+        this.watermarks = builder.watermarks;
+    }
+
+    public long getTipHeight() {
+        return tipHeight;
+    }
+
+    public byte[] getTipHash() {
+        return tipHash;
+    }
+
+    public BigInteger getCumulativeWork() {
+        return cumulativeWork;
+    }
+
+    public int getBaseDifficulty() {
+        return baseDifficulty;
+    }
+
+    public long[] getDifficultyWindow() {
+        return difficultyWindow;
+    }
+
+    public Map<String, Long> getWatermarks() {
+        return watermarks;
+    }
+
+    public long getWatermark(String name, long defaultValue) {
+        return this.watermarks.getOrDefault(name, defaultValue);
+    }
+
+    /**
+     * Write this checkpoint to the directory, keeping only the newest checkpoints.
+     *
+     * @param directory
+     * @param keep
+     * @throws IOException
+     */
+    public void write(Path directory, int keep) throws IOException {
+        Files.createDirectories(directory);
+        byte[] contents = this.toBytes();
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        ByteBuffer record = ByteBuffer.allocate(contents.length + Long.BYTES);
+        record.put(contents);
+        record.putLong(crc.getValue());
+        record.flip();
+        List<Path> existing = listCheckpoints(directory);
+        long sequence = existing.isEmpty() ? 0 : sequenceOf(existing.get(0)) + 1;
+        Path checkpoint = directory.resolve(String.format("%s%012d%s", _FILE_PREFIX, sequence, _FILE_SUFFIX));
+        Path temp = directory.resolve(checkpoint.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory(directory);
+        List<Path> checkpoints = listCheckpoints(directory);
+        for (int i = keep; i < checkpoints.size(); i++) {
+            Files.deleteIfExists(checkpoints.get(i));
+        }
+    }
+
+    /**
+     * Read the checkpoints in a directory, newest first. Checkpoints that are damaged
+     * (the checksum does not match) are skipped.
+     *
+     * @param directory
+     * @return checkpoints
+     */
+    public static List<ChainCheckpoint> readAll(Path directory) {
+        List<ChainCheckpoint> checkpoints = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return checkpoints;
+        }
+        try {
+            for (Path path : listCheckpoints(directory)) {
+                try {
+                    checkpoints.add(read(Files.readAllBytes(path)));
+                } catch (IOException e) {
+                    logger.warn("Skipping damaged chain checkpoint {}: {}", path.getFileName(), e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to list chain checkpoints: {}", e.getMessage());
+        }
+        return checkpoints;
+    }
+
+    private static ChainCheckpoint read(byte[] record) throws IOException {
+        if (record.length < Long.BYTES) {
+            throw new IOException("Checkpoint is truncated.");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length - Long.BYTES);
+        if (crc.getValue() != ByteBuffer.wrap(record, record.length - Long.BYTES, Long.BYTES).getLong()) {
+            throw new IOException("Checkpoint checksum does not match.");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 0, record.length - Long.BYTES));
+        if (in.readInt() != _MAGIC) {
+            throw new IOException("Not a chain checkpoint.");
+        }
+        int formatVersion = in.readUnsignedByte();
+        if (formatVersion != _FORMAT_VERSION) {
+            throw new IOException("Unsupported checkpoint version: " + formatVersion);
+        }
+        Builder builder = Builder.builder()
+                .setTipHeight(in.readLong())
+                .setTipHash(readBytes(in))
+                .setCumulativeWork(new BigInteger(readBytes(in)))
+                .setBaseDifficulty(in.readInt());
+        long[] window = new long[in.readInt()];
+        for (int i = 0; i < window.length; i++) {
+            window[i] = in.readLong();
+        }
+        builder.setDifficultyWindow(window);
+        int watermarkCount = in.readInt();
+        for (int i = 0; i < watermarkCount; i++) {
+            builder.setWatermark(in.readUTF(), in.readLong());
+        }
+        return builder.build();
+    }
+
+    private byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(_MAGIC);
+        out.writeByte(_FORMAT_VERSION);
+        out.writeLong(this.tipHeight);
+        writeBytes(out, this.tipHash);
+        writeBytes(out, this.cumulativeWork.toByteArray());
+        out.writeInt(this.baseDifficulty);
+        out.writeInt(this.difficultyWindow.length);
+        for (long value : this.difficultyWindow) {
+            out.writeLong(value);
+        }
+        out.writeInt(this.watermarks.size());
+        for (Map.Entry<String, Long> watermark : this.watermarks.entrySet()) {
+            out.writeUTF(watermark.getKey());
+            out.writeLong(watermark.getValue());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return value;
+    }
+
+    // Checkpoint files in the directory, newest (last written) first
+    private static List<Path> listCheckpoints(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> checkpoints = files
+                    .filter(path -> sequenceOf(path) >= 0)
+                    .sorted(Comparator.comparingLong(ChainCheckpoint::sequenceOf))
+                    .collect(Collectors.toList());
+            Collections.reverse(checkpoints);
+            return checkpoints;
+        }
+    }
+
+    // The write sequence number of a checkpoint file, -1 if the file is not a checkpoint
+    private static long sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(_FILE_PREFIX) || !name.endsWith(_FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(_FILE_PREFIX.length(), name.length() - _FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Force the directory entry of a moved file to disk, so the move survives a crash. Not every
+    // platform can open a directory, in which case the move is left to the file system.
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Unable to force the checkpoint directory to disk: {}", e.getMessage());
+        }
+    }
+
+    public static class Builder {
+
+        private long tipHeight;
+        private byte[] tipHash;
+        private BigInteger cumulativeWork = BigInteger.ZERO;
+        private int baseDifficulty;
+        private long[] difficultyWindow = new long[0];
+        private final Map<String, Long> watermarks = new LinkedHashMap<>();
+
+        private Builder() {}
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public Builder setTipHeight(long tipHeight) {
+            this.tipHeight = tipHeight;
+            return this;
+        }
+
+        public Builder setTipHash(byte[] tipHash) {
+            this.tipHash = tipHash;
+            return this;
+        }
+
+        public Builder setCumulativeWork(BigInteger cumulativeWork) {
+            this.cumulativeWork = cumulativeWork;
+            return this;
+        }
+
+        public Builder setBaseDifficulty(int baseDifficulty) {
+            this.baseDifficulty = baseDifficulty;
+            return this;
+        }
+
+        public Builder setDifficultyWindow(long[] difficultyWindow) {
+            this.difficultyWindow = difficultyWindow;
+            return this;
+        }
+
+        public Builder setWatermark(String name, long value) {
+            this.watermarks.put(name, value);
+            return this;
+        }
+
+        public ChainCheckpoint build() {
+            return new ChainCheckpoint(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package org.yggdrasil.core.ledger.chain;
+
+/**
+ * Listener for the blocks connected to and disconnected from the main chain. Listeners are
+ * called while the chain is being updated, so they must only take note of the change and do
+ * any work on their own threads.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public interface ChainListener {
+
+    void blockConnected(byte[] blockHash, long height);
+
+    void blockDisconnected(byte[] blockHash, long height);
+
+}
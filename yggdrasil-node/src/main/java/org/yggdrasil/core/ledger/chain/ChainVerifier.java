@@ -0,0 +1,316 @@
+package org.yggdrasil.core.ledger.chain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yggdrasil.core.utils.CryptoHasher;
+import org.yggdrasil.core.utils.MerkleTree;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The chain verifier checks a run of blocks, either a stored chain or a range of imported
+ * blocks. The per block checks (recomputing the header hash, checking the proof of work and
+ * recomputing the merkle root) are independent of each other, so they are split into chunks
+ * and run on a fork/join pool. Only the check that each block links to the one before it is
+ * done sequentially, since it is just a comparison of two hashes.
+ *
+ * Stored chains are verified in batches of blocks, so that the whole chain never has to be
+ * held in memory. Progress and throughput are logged as the batches complete. Each verification
+ * counts its own progress, so a run of imported blocks being verified does not disturb the
+ * progress reported for a stored chain.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class ChainVerifier {
+
+    private final Logger logger = LoggerFactory.getLogger(ChainVerifier.class);
+
+    // The number of blocks checked by a single task before it stops splitting
+    private static final int _CHUNK_SIZE = 64;
+    // The number of blocks read and verified at a time when verifying a stored chain
+    private static final int _BATCH_SIZE = 4096;
+    // The least time (in milliseconds) between progress reports
+    private static final long _PROGRESS_INTERVAL = 5000;
+
+    private final ForkJoinPool pool;
+    // The progress of the stored chain verification in progress, or the last one
+    private volatile Progress progress = new Progress(0);
+
+    public ChainVerifier(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * A source of the blocks of a chain, by height.
+     */
+    public interface BlockSource {
+        /**
+         * Returns the blocks between two heights (both inclusive), in ascending order of height.
+         */
+        List<Block> getBlocks(long fromHeight, long toHeight);
+    }
+
+    /**
+     * Verify a run of blocks that are in chain order. The first block is only checked on its
+     * own, since the block before it is not known.
+     *
+     * @param blocks
+     * @return result
+     */
+    public Result verify(List<Block> blocks) {
+        return this.verify(blocks, null);
+    }
+
+    /**
+     * Verify a run of blocks that are in chain order, where the first block has to link to
+     * the given previous block hash.
+     *
+     * @param blocks
+     * @param previousBlockHash the hash the first block has to link to, or null to not check it
+     * @return result
+     */
+    public Result verify(List<Block> blocks, byte[] previousBlockHash) {
+        long startTime = System.currentTimeMillis();
+        Result result = this.verifyBatch(blocks, previousBlockHash, 0, new Progress(blocks.size()));
+        return result != null ? result.finish(startTime) : new Result(blocks.size(), -1, null).finish(startTime);
+    }
+
+    /**
+     * Verify the blocks of a stored chain between two heights (both inclusive), reading them from
+     * the source a batch at a time.
+     *
+     * @param source
+     * @param fromHeight
+     * @param toHeight
+     * @param previousBlockHash the hash of the block before fromHeight, or null to not check it
+     * @return result
+     */
+    public Result verify(BlockSource source, long fromHeight, long toHeight, byte[] previousBlockHash) {
+        long startTime = System.currentTimeMillis();
+        long lastReport = startTime;
+        Progress run = new Progress(Math.max(toHeight - fromHeight + 1, 0));
+        this.progress = run;
+        long count = 0;
+        for(long batchStart = fromHeight; batchStart <= toHeight; batchStart += _BATCH_SIZE) {
+            long batchEnd = Math.min(batchStart + _BATCH_SIZE - 1, toHeight);
+            List<Block> blocks = source.getBlocks(batchStart, batchEnd);
+            if(blocks.size() != batchEnd - batchStart + 1) {
+                return new Result(count, batchStart + blocks.size(), "Block is missing from the chain").finish(startTime);
+            }
+            Result failure = this.verifyBatch(blocks, previousBlockHash, count, run);
+            if(failure != null) {
+                return new Result(failure.getBlocksVerified(), batchStart + failure.getFailedIndex() - count, failure.getReason()).finish(startTime);
+            }
+            count += blocks.size();
+            previousBlockHash = blocks.get(blocks.size() - 1).getBlockHash();
+            if(System.currentTimeMillis() - lastReport >= _PROGRESS_INTERVAL) {
+                lastReport = System.currentTimeMillis();
+                logger.info("Verified {} of {} blocks ({} blocks/s).", count, run.total,
+                        Result.rate(count, lastReport - startTime));
+            }
+        }
+        return new Result(count, -1, null).finish(startTime);
+    }
+
+    /**
+     * Returns the progress of the stored chain verification in progress (or the last one).
+     *
+     * @return progress
+     */
+    public Map<String, Long> getProgress() {
+        Progress run = this.progress;
+        Map<String, Long> progress = new LinkedHashMap<>();
+        progress.put("verified", run.verified.get());
+        progress.put("total", run.total);
+        return progress;
+    }
+
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    // Verify a batch of blocks, returning the first failure or null if the batch is valid. The
+    // blocks are checked in parallel, then the links between them are checked in order.
+    private Result verifyBatch(List<Block> blocks, byte[] previousBlockHash, long offset, Progress run) {
+        Block[] batch = blocks.toArray(new Block[0]);
+        AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+        this.pool.invoke(new BlockCheckTask(batch, 0, batch.length, firstFailure, run));
+        int failed = firstFailure.get();
+        for(int i = 0; i < Math.min(failed, batch.length); i++) {
+            byte[] expected = i == 0 ? previousBlockHash : batch[i - 1].getBlockHash();
+            if(expected != null && !Arrays.equals(expected, batch[i].getHeader().getPreviousBlockHash())) {
+                return new Result(offset + i, offset + i, "Block does not link to the previous block");
+            }
+        }
+        if(failed < batch.length) {
+            return new Result(offset + failed, offset + failed, checkBlock(batch[failed]));
+        }
+        return null;
+    }
+
+    // The fork/join task checking a range of blocks. The lowest index of a block that failed is
+    // recorded, and ranges past it are not checked any further.
+    private static final class BlockCheckTask extends RecursiveTask<Void> {
+
+        private final Block[] blocks;
+        private final int from;
+        private final int to;
+        private final AtomicInteger firstFailure;
+        private final Progress run;
+
+        private BlockCheckTask(Block[] blocks, int from, int to, AtomicInteger firstFailure, Progress run) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.firstFailure = firstFailure;
+            this.run = run;
+        }
+
+        @Override
+        protected Void compute() {
+            if(this.to - this.from > _CHUNK_SIZE) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new BlockCheckTask(this.blocks, this.from, middle, this.firstFailure, this.run),
+                        new BlockCheckTask(this.blocks, middle, this.to, this.firstFailure, this.run));
+                return null;
+            }
+            for(int i = this.from; i < this.to && i < this.firstFailure.get(); i++) {
+                if(checkBlock(this.blocks[i]) != null) {
+                    this.firstFailure.accumulateAndGet(i, Math::min);
+                    return null;
+                }
+                this.run.verified.incrementAndGet();
+            }
+            return null;
+        }
+
+    }
+
+    // The progress of a single verification: the number of blocks verified, and the number to verify
+    private static final class Progress {
+
+        private final AtomicLong verified = new AtomicLong();
+        private final long total;
+
+        private Progress(long total) {
+            this.total = total;
+        }
+
+    }
+
+    /**
+     * Check a single block on its own: that its hash is the hash of its header, that the hash
+     * meets the difficulty and that the merkle root matches its transactions. Blocks without
+     * transactions (header only or pruned) are not checked against their merkle root.
+     *
+     * @param block
+     * @return the reason the block is not valid, or null if it is valid
+     */
+    public static String checkBlock(Block block) {
+        BlockHeader header = block.getHeader();
+        if(header == null || block.getBlockHash() == null) {
+            return "Block is missing its header";
+        }
+        try {
+            if(!Arrays.equals(block.getBlockHash(), CryptoHasher.hash(header))) {
+                return "Block hash does not match its header";
+            }
+            if(!meetsDifficulty(block.getBlockHash(), header.getDiff())) {
+                return "Block hash does not meet its difficulty";
+            }
+            if(block.getData() != null && MerkleTree.hasDuplicateTxns(block.getData())) {
+                return "Block holds the same txn more than once";
+            }
+            if(block.getData() != null && !block.getData().isEmpty() && header.getMerkleRoot() != null
+                    && !Arrays.equals(header.getMerkleRoot(), CryptoHasher.generateMerkleTree(block.getData(), header.getVersion()))) {
+                return "Merkle root does not match the block's transactions";
+            }
+        } catch (NoSuchAlgorithmException e) {
+            return "Unable to hash the block: " + e.getMessage();
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether a hash meets a difficulty, which is the number of leading zero hex
+     * digits of the hash.
+     *
+     * @param hash
+     * @param difficulty
+     * @return meetsDifficulty
+     */
+    public static boolean meetsDifficulty(byte[] hash, int difficulty) {
+        if(difficulty > hash.length * 2) {
+            return false;
+        }
+        for(int i = 0; i < difficulty; i++) {
+            int digit = (i % 2 == 0) ? (hash[i / 2] >> 4) & 0x0F : hash[i / 2] & 0x0F;
+            if(digit != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The result of verifying a run of blocks.
+     */
+    public static final class Result {
+
+        private final long blocksVerified;
+        // The index (or height, for a stored chain) of the first block that failed, -1 if none did
+        private final long failedIndex;
+        private final String reason;
+        private long elapsedMillis;
+
+        private Result(long blocksVerified, long failedIndex, String reason) {
+            this.blocksVerified = blocksVerified;
+            this.failedIndex = failedIndex;
+            this.reason = reason;
+        }
+
+        private Result finish(long startTime) {
+            this.elapsedMillis = System.currentTimeMillis() - startTime;
+            return this;
+        }
+
+        public boolean isValid() {
+            return this.failedIndex < 0;
+        }
+
+        public long getBlocksVerified() {
+            return blocksVerified;
+        }
+
+        public long getFailedIndex() {
+            return failedIndex;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getBlocksPerSecond() {
+            return rate(this.blocksVerified, this.elapsedMillis);
+        }
+
+        private static long rate(long blocks, long millis) {
+            return millis > 0 ? blocks * 1000 / millis : blocks;
+        }
+
+    }
+
+}
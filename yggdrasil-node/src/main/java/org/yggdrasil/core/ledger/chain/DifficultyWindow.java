@@ -0,0 +1,111 @@
+package org.yggdrasil.core.ledger.chain;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Rolling window of the (height, epoch time) pairs of the most recent blocks in the main chain,
+ * used for retargeting the hash difficulty. Since the solve times between consecutive blocks
+ * sum to the time between the oldest and newest block in the window, the average solve time
+ * is available without walking the chain.
+ *
+ * The window can be written to a flat array of heights and times so that it can be restored
+ * from the chain state on restart.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class DifficultyWindow {
+
+    // The number of solve times in the window, the window holds one more block than this
+    private final int window;
+    // The (height, epochTime) pairs, oldest first
+    private final Deque<long[]> blocks;
+
+    public DifficultyWindow(int window) {
+        this.window = window;
+        this.blocks = new ArrayDeque<>(window + 1);
+    }
+
+    /**
+     * Add the newest block of the main chain to the window. If the height is not past the
+     * newest block in the window (the chain was rolled back), the blocks from that height on
+     * are dropped first.
+     *
+     * @param height
+     * @param epochTime
+     */
+    public synchronized void addBlock(long height, long epochTime) {
+        while(!this.blocks.isEmpty() && this.blocks.peekLast()[0] >= height) {
+            this.blocks.pollLast();
+        }
+        this.blocks.addLast(new long[]{height, epochTime});
+        while(this.blocks.size() > this.window + 1) {
+            this.blocks.pollFirst();
+        }
+    }
+
+    /**
+     * Returns the number of solve times currently in the window.
+     *
+     * @return solveCount
+     */
+    public synchronized int getSolveCount() {
+        return Math.max(this.blocks.size() - 1, 0);
+    }
+
+    /**
+     * Returns the height of the newest block in the window, or -1 if it is empty.
+     *
+     * @return tipHeight
+     */
+    public synchronized long getTipHeight() {
+        return this.blocks.isEmpty() ? -1 : this.blocks.peekLast()[0];
+    }
+
+    /**
+     * Returns the sum of the solve times in the window, in seconds.
+     *
+     * @return totalSolveTime
+     */
+    public synchronized long getTotalSolveTime() {
+        if(this.blocks.size() < 2) {
+            return 0;
+        }
+        return this.blocks.peekLast()[1] - this.blocks.peekFirst()[1];
+    }
+
+    /**
+     * Write the window to a flat array of alternating heights and epoch times, oldest first.
+     *
+     * @return window
+     */
+    public synchronized long[] toArray() {
+        long[] flat = new long[this.blocks.size() * 2];
+        Iterator<long[]> iterator = this.blocks.iterator();
+        for(int i = 0; iterator.hasNext(); i += 2) {
+            long[] block = iterator.next();
+            flat[i] = block[0];
+            flat[i + 1] = block[1];
+        }
+        return flat;
+    }
+
+    /**
+     * Replace the contents of the window with a flat array written by {@link #toArray()}.
+     *
+     * @param flat
+     */
+    public synchronized void restore(long[] flat) {
+        this.blocks.clear();
+        for(int i = 0; i + 1 < flat.length; i += 2) {
+            this.addBlock(flat[i], flat[i + 1]);
+        }
+    }
+
+    public synchronized void clear() {
+        this.blocks.clear();
+    }
+
+}
@@ -0,0 +1,166 @@
+package org.yggdrasil.core.ledger.chain;
+
+import org.mapdb.DataOutput2;
+import org.mapdb.HTreeMap;
+import org.yggdrasil.core.ledger.exceptions.BlockStoreException;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Block store backed by a MapDB hash map. This is the original archival storage
+ * of the blockchain, where each block is a value in the map keyed by its hash.
+ *
+ * Blocks that are compressed are moved to a second map, whose values are written in the
+ * compressed format, and are read from there when they are not in the first.
+ *
+ * The size each block is stored with is kept in a third map when it is written, so that
+ * it can be looked up without encoding the block again.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class MapDBBlockStore implements BlockStore {
+
+    private final HTreeMap<byte[], Block> blocks;
+    // The compressed blocks, null if the store has no compressed tier
+    private final HTreeMap<byte[], Block> compressedBlocks;
+    // The stored size of each block, null if sizes are measured when they are asked for
+    private final HTreeMap<byte[], Long> blockSizes;
+
+    public MapDBBlockStore(HTreeMap<byte[], Block> blocks) {
+        this(blocks, null, null);
+    }
+
+    public MapDBBlockStore(HTreeMap<byte[], Block> blocks, HTreeMap<byte[], Block> compressedBlocks, HTreeMap<byte[], Long> blockSizes) {
+        this.blocks = blocks;
+        this.compressedBlocks = compressedBlocks;
+        this.blockSizes = blockSizes;
+    }
+
+    @Override
+    public void putBlock(byte[] blockHash, Block block) {
+        this.blocks.put(blockHash, block);
+        // A rewritten block replaces its compressed copy
+        if (this.compressedBlocks != null) {
+            this.compressedBlocks.remove(blockHash);
+        }
+        if (this.blockSizes != null) {
+            this.blockSizes.put(blockHash, measure(this.blocks, block));
+        }
+    }
+
+    @Override
+    public Optional<Block> getBlock(byte[] blockHash) {
+        Block block = this.blocks.get(blockHash);
+        if (block == null && this.compressedBlocks != null) {
+            block = this.compressedBlocks.get(blockHash);
+        }
+        return Optional.ofNullable(block);
+    }
+
+    @Override
+    public boolean containsBlock(byte[] blockHash) {
+        return this.blocks.containsKey(blockHash) || (this.compressedBlocks != null && this.compressedBlocks.containsKey(blockHash));
+    }
+
+    @Override
+    public void removeBlock(byte[] blockHash) {
+        this.blocks.remove(blockHash);
+        if (this.compressedBlocks != null) {
+            this.compressedBlocks.remove(blockHash);
+        }
+        if (this.blockSizes != null) {
+            this.blockSizes.remove(blockHash);
+        }
+    }
+
+    @Override
+    public long getBlockSize(byte[] blockHash) {
+        Long size = this.blockSizes == null ? null : this.blockSizes.get(blockHash);
+        if (size != null) {
+            return size;
+        }
+        // Blocks written before sizes were kept are measured once, and their size is kept from then on
+        Block block = this.blocks.get(blockHash);
+        HTreeMap<byte[], Block> map = this.blocks;
+        if (block == null && this.compressedBlocks != null) {
+            block = this.compressedBlocks.get(blockHash);
+            map = this.compressedBlocks;
+        }
+        if (block == null) {
+            return -1;
+        }
+        long measured = measure(map, block);
+        if (this.blockSizes != null) {
+            this.blockSizes.put(blockHash, measured);
+        }
+        return measured;
+    }
+
+    @Override
+    public long compressBlock(byte[] blockHash) {
+        Block block = this.blocks.get(blockHash);
+        if (block != null && this.compressedBlocks != null) {
+            // Written to the compressed map first, so the block can always be found
+            this.compressedBlocks.put(blockHash, block);
+            this.blocks.remove(blockHash);
+            if (this.blockSizes != null) {
+                this.blockSizes.put(blockHash, measure(this.compressedBlocks, block));
+            }
+        }
+        return this.getBlockSize(blockHash);
+    }
+
+    @Override
+    public void compact() {
+        // MapDB reuses the space freed by removed and overwritten records.
+    }
+
+    @Override
+    public Iterable<byte[]> getBlockHashes() {
+        if (this.compressedBlocks == null) {
+            return this.blocks.getKeys();
+        }
+        return () -> Stream.concat(this.blocks.getKeys().stream(), this.compressedBlocks.getKeys().stream()).iterator();
+    }
+
+    @Override
+    public long size() {
+        return this.blocks.sizeLong() + (this.compressedBlocks == null ? 0 : this.compressedBlocks.sizeLong());
+    }
+
+    @Override
+    public void clear() {
+        this.blocks.clear();
+        if (this.compressedBlocks != null) {
+            this.compressedBlocks.clear();
+        }
+        if (this.blockSizes != null) {
+            this.blockSizes.clear();
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Writes go straight to the underlying database.
+    }
+
+    @Override
+    public void close() {
+        // The map is closed along with its database.
+    }
+
+    // The size of a block as written by the value serializer of a map
+    private static long measure(HTreeMap<byte[], Block> map, Block block) {
+        try {
+            DataOutput2 out = new DataOutput2();
+            map.getValueSerializer().serialize(out, block);
+            return out.pos;
+        } catch (IOException e) {
+            throw new BlockStoreException("Unable to measure the stored block size.", e);
+        }
+    }
+
+}
@@ -0,0 +1,322 @@
+package org.yggdrasil.core.ledger.chain;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.HTreeMap;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yggdrasil.core.ledger.exceptions.BlockStoreException;
+import org.yggdrasil.core.serialization.CompressedBlockSerializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Block store that appends blocks to fixed-size segment files (blk00000.dat, blk00001.dat, ...).
+ * Each record in a segment is the length of the encoded block followed by the encoded block.
+ * A small index maps each block hash to the segment, offset and length of its record, so that
+ * reading a block is a bounded slice of a memory-mapped segment.
+ *
+ * Segments are only ever appended to. Once a segment is full it is sealed and mapped into memory
+ * once for all following reads. A sealed segment that no longer holds any indexed records (for
+ * example after its blocks were pruned and rewritten) is deleted on compaction.
+ *
+ * Compressing a block appends a new, compressed record for it and points the index at that
+ * record. Records are told apart by their first byte when they are read.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class SegmentedBlockStore implements BlockStore {
+
+    private final Logger logger = LoggerFactory.getLogger(SegmentedBlockStore.class);
+
+    // The length of the record header, which is the length of the encoded block
+    private static final int _RECORD_HEADER_SIZE = Integer.BYTES;
+    // Positions of the block location fields in the index values
+    private static final int _SEGMENT = 0;
+    private static final int _OFFSET = 1;
+    private static final int _LENGTH = 2;
+
+    // The directory the segments are written to
+    private final Path directory;
+    // The maximum size of a single segment file in bytes
+    private final long segmentSize;
+    // Encoder / decoder for the block records
+    private final Serializer<Block> serializer;
+    // Encoder / decoder for the compressed block records, null if blocks are not compressed
+    private final Serializer<Block> compressedSerializer;
+    // The block hash -> (segment, offset, length) index
+    private final HTreeMap<byte[], long[]> blockLocations;
+    // Read only mappings of the segments that are full and will no longer be written to
+    private final Map<Integer, MappedByteBuffer> sealedSegments;
+    // The segment currently being appended to
+    private int currentSegment;
+    private FileChannel currentChannel;
+    private long currentOffset;
+    private final Object lock = new Object();
+
+    public SegmentedBlockStore(Path directory, long segmentSize, Serializer<Block> serializer, HTreeMap<byte[], long[]> blockLocations) {
+        this(directory, segmentSize, serializer, null, blockLocations);
+    }
+
+    public SegmentedBlockStore(Path directory, long segmentSize, Serializer<Block> serializer, Serializer<Block> compressedSerializer,
+                               HTreeMap<byte[], long[]> blockLocations) {
+        // Sealed segments are mapped whole, and a mapping can not be larger than 2 GB
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The block segment size must be between 1 and " + Integer.MAX_VALUE + " bytes, not " + segmentSize + ".");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.serializer = serializer;
+        this.compressedSerializer = compressedSerializer;
+        this.blockLocations = blockLocations;
+        this.sealedSegments = new ConcurrentHashMap<>();
+        try {
+            Files.createDirectories(directory);
+            // Resume appending to the last segment that was written, earlier segments may
+            // have been removed by compaction
+            this.currentSegment = 0;
+            try (Stream<Path> segments = Files.list(directory)) {
+                segments.map(path -> path.getFileName().toString())
+                        .filter(name -> name.matches("blk\\d{5}\\.dat"))
+                        .mapToInt(name -> Integer.parseInt(name.substring(3, 8)))
+                        .max()
+                        .ifPresent(last -> this.currentSegment = last);
+            }
+            for (int segment = 0; segment < this.currentSegment; segment++) {
+                if (Files.exists(this.segmentPath(segment))) {
+                    this.sealedSegments.put(segment, this.mapSegment(segment, 0, Files.size(this.segmentPath(segment))));
+                }
+            }
+            this.openCurrentSegment();
+            logger.info("Opened block segment {} at offset {}.", this.segmentPath(this.currentSegment).getFileName(), this.currentOffset);
+        } catch (IOException e) {
+            throw new BlockStoreException("Unable to open the block segments in " + directory, e);
+        }
+    }
+
+    @Override
+    public void putBlock(byte[] blockHash, Block block) {
+        this.appendBlock(blockHash, block, this.serializer);
+    }
+
+    // Append the record of a block to the current segment and point the index at it
+    private void appendBlock(byte[] blockHash, Block block, Serializer<Block> serializer) {
+        try {
+            DataOutput2 out = new DataOutput2();
+            serializer.serialize(out, block);
+            int length = out.pos;
+            synchronized (lock) {
+                // Roll over to a new segment if this record would not fit in the current one
+                if (this.currentOffset > 0 && this.currentOffset + _RECORD_HEADER_SIZE + length > this.segmentSize) {
+                    this.sealCurrentSegment();
+                }
+                ByteBuffer record = ByteBuffer.allocate(_RECORD_HEADER_SIZE + length);
+                record.putInt(length);
+                record.put(out.buf, 0, length);
+                record.flip();
+                long recordOffset = this.currentOffset;
+                while (record.hasRemaining()) {
+                    this.currentOffset += this.currentChannel.write(record, this.currentOffset);
+                }
+                this.blockLocations.put(blockHash, new long[]{this.currentSegment, recordOffset + _RECORD_HEADER_SIZE, length});
+            }
+        } catch (IOException e) {
+            throw new BlockStoreException("Unable to append block to the current segment.", e);
+        }
+    }
+
+    @Override
+    public Optional<Block> getBlock(byte[] blockHash) {
+        long[] location = this.blockLocations.get(blockHash);
+        if (location == null) {
+            return Optional.empty();
+        }
+        try {
+            ByteBuffer segment = this.mapRecord(location);
+            int offset = segment.position();
+            Serializer<Block> serializer = this.compressedSerializer != null && CompressedBlockSerializer.isCompressed(segment.get(offset))
+                    ? this.compressedSerializer : this.serializer;
+            return Optional.of(serializer.deserialize(new DataInput2.ByteBuffer(segment, offset), (int) location[_LENGTH]));
+        } catch (IOException e) {
+            throw new BlockStoreException("Unable to read block from segment " + location[_SEGMENT] + ".", e);
+        }
+    }
+
+    @Override
+    public boolean containsBlock(byte[] blockHash) {
+        return this.blockLocations.containsKey(blockHash);
+    }
+
+    @Override
+    public void removeBlock(byte[] blockHash) {
+        // Segments are append only, the record is simply no longer indexed.
+        this.blockLocations.remove(blockHash);
+    }
+
+    @Override
+    public long getBlockSize(byte[] blockHash) {
+        long[] location = this.blockLocations.get(blockHash);
+        return location == null ? -1 : location[_LENGTH] + _RECORD_HEADER_SIZE;
+    }
+
+    @Override
+    public long compressBlock(byte[] blockHash) {
+        long[] location = this.blockLocations.get(blockHash);
+        if (location == null) {
+            return -1;
+        }
+        try {
+            if (this.compressedSerializer != null && !CompressedBlockSerializer.isCompressed(this.mapRecord(location).get())) {
+                // The uncompressed record is left behind, its segment is removed on compaction once
+                // none of its records are indexed
+                this.getBlock(blockHash).ifPresent(block -> this.appendBlock(blockHash, block, this.compressedSerializer));
+            }
+        } catch (IOException e) {
+            throw new BlockStoreException("Unable to read block from segment " + location[_SEGMENT] + ".", e);
+        }
+        return this.getBlockSize(blockHash);
+    }
+
+    @Override
+    public void compact() {
+        Set<Long> liveSegments = new HashSet<>();
+        for (long[] location : this.blockLocations.getValues()) {
+            liveSegments.add(location[_SEGMENT]);
+        }
+        synchronized (lock) {
+            for (Integer segment : new ArrayList<>(this.sealedSegments.keySet())) {
+                if (!liveSegments.contains(segment.longValue())) {
+                    this.sealedSegments.remove(segment);
+                    try {
+                        Files.deleteIfExists(this.segmentPath(segment));
+                        logger.info("Removed block segment {}, it no longer holds any blocks.", this.segmentPath(segment).getFileName());
+                    } catch (IOException e) {
+                        logger.error("Unable to remove block segment {}: {}", segment, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Iterable<byte[]> getBlockHashes() {
+        return this.blockLocations.getKeys();
+    }
+
+    @Override
+    public long size() {
+        return this.blockLocations.sizeLong();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            try {
+                this.currentChannel.close();
+                this.sealedSegments.clear();
+                for (int segment = 0; segment <= this.currentSegment; segment++) {
+                    Files.deleteIfExists(this.segmentPath(segment));
+                }
+                this.blockLocations.clear();
+                this.currentSegment = 0;
+                this.openCurrentSegment();
+            } catch (IOException e) {
+                throw new BlockStoreException("Unable to remove the block segments in " + this.directory, e);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        synchronized (lock) {
+            try {
+                this.currentChannel.force(false);
+            } catch (IOException e) {
+                throw new BlockStoreException("Unable to flush the current segment.", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            try {
+                this.currentChannel.force(true);
+                this.currentChannel.close();
+            } catch (IOException e) {
+                logger.error("Error while closing the current segment: {}", e.getMessage());
+            }
+            this.sealedSegments.clear();
+        }
+    }
+
+    // Finish writing the current segment, map it for reading and start the next one
+    private void sealCurrentSegment() throws IOException {
+        this.currentChannel.force(true);
+        this.currentChannel.close();
+        this.sealedSegments.put(this.currentSegment, this.mapSegment(this.currentSegment, 0, this.currentOffset));
+        logger.debug("Sealed block segment {} at {} bytes.", this.segmentPath(this.currentSegment).getFileName(), this.currentOffset);
+        this.currentSegment++;
+        this.openCurrentSegment();
+    }
+
+    private void openCurrentSegment() throws IOException {
+        this.currentChannel = FileChannel.open(this.segmentPath(this.currentSegment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.currentOffset = this.currentChannel.size();
+    }
+
+    // Returns a buffer positioned at the start of a record
+    private ByteBuffer mapRecord(long[] location) throws IOException {
+        int segment = (int) location[_SEGMENT];
+        MappedByteBuffer sealed = this.sealedSegments.get(segment);
+        if (sealed != null) {
+            return sealed.duplicate().position((int) location[_OFFSET]);
+        }
+        synchronized (lock) {
+            // The record is in the segment being appended to, which is not mapped, so it is read
+            // straight from the channel the segment is written through
+            if (segment == this.currentSegment) {
+                ByteBuffer record = ByteBuffer.allocate((int) location[_LENGTH]);
+                while (record.hasRemaining()) {
+                    if (this.currentChannel.read(record, location[_OFFSET] + record.position()) < 0) {
+                        throw new IOException("Block record runs past the end of segment " + segment + ".");
+                    }
+                }
+                return record.flip();
+            }
+        }
+        // The segment was sealed while waiting for the lock
+        sealed = this.sealedSegments.get(segment);
+        if (sealed == null) {
+            throw new IOException("Block segment " + segment + " is not available.");
+        }
+        return sealed.duplicate().position((int) location[_OFFSET]);
+    }
+
+    private MappedByteBuffer mapSegment(int segment, long offset, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.segmentPath(segment), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return this.directory.resolve(String.format("blk%05d.dat", segment));
+    }
+
+}
@@ -0,0 +1,159 @@
+package org.yggdrasil.core.ledger.chain;
+
+import org.mapdb.DB;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.HTreeMap;
+import org.mapdb.Serializer;
+import org.springframework.stereotype.Component;
+import org.yggdrasil.core.ledger.Indexer;
+import org.yggdrasil.core.ledger.exceptions.BlockStoreException;
+import org.yggdrasil.core.ledger.transaction.Transaction;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The transaction index maps the hash of each transaction in the main chain to the block it
+ * was confirmed in and its position in that block, so a confirmed transaction can be found
+ * with one index lookup and one block read.
+ *
+ * The index is run by the {@link org.yggdrasil.core.ledger.IndexerManager}, and is enabled
+ * with the `blockchain.index.txindex` property.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+@Component
+public class TransactionIndex implements Indexer {
+
+    private static final int _RECORD_VERSION = 1;
+
+    // The locations of the transactions, txn hash -> record
+    private HTreeMap<byte[], byte[]> locations;
+
+    @Override
+    public String getName() {
+        return "txindex";
+    }
+
+    @Override
+    public void open(DB database) {
+        this.locations = database
+                .hashMap("txIndex")
+                .keySerializer(Serializer.BYTE_ARRAY)
+                .valueSerializer(Serializer.BYTE_ARRAY)
+                .createOrOpen();
+    }
+
+    public long size() {
+        return this.locations.sizeLong();
+    }
+
+    /**
+     * Index the transactions of the block at the given height.
+     *
+     * @param block
+     * @param height
+     */
+    @Override
+    public void indexBlock(Block block, long height) {
+        List<Transaction> txns = block.getData();
+        if (txns != null) {
+            for (int i = 0; i < txns.size(); i++) {
+                this.locations.put(txns.get(i).getTxnHash(), encode(block.getBlockHash(), i));
+            }
+        }
+    }
+
+    /**
+     * Remove the transactions of the block at the given height from the index, when the block
+     * is disconnected from the main chain.
+     *
+     * @param block
+     * @param height
+     */
+    @Override
+    public void unindexBlock(Block block, long height) {
+        if (block.getData() != null) {
+            for (Transaction txn : block.getData()) {
+                this.locations.remove(txn.getTxnHash());
+            }
+        }
+    }
+
+    /**
+     * Look up where a transaction was confirmed. Empty when the index is not enabled.
+     *
+     * @param txnHash
+     * @return location
+     */
+    public Optional<Location> getLocation(byte[] txnHash) {
+        if (this.locations == null) {
+            return Optional.empty();
+        }
+        byte[] record = this.locations.get(txnHash);
+        if (record == null) {
+            return Optional.empty();
+        }
+        return Optional.of(decode(record));
+    }
+
+    @Override
+    public void clear() {
+        this.locations.clear();
+    }
+
+    private static byte[] encode(byte[] blockHash, int position) {
+        try {
+            DataOutput2 out = new DataOutput2();
+            out.writeByte(_RECORD_VERSION);
+            out.packInt(blockHash.length);
+            out.write(blockHash);
+            out.packInt(position);
+            return out.copyBytes();
+        } catch (IOException e) {
+            throw new BlockStoreException("Unable to store the transaction location.", e);
+        }
+    }
+
+    private static Location decode(byte[] record) {
+        try {
+            DataInput2 in = new DataInput2.ByteArray(record);
+            int version = in.readUnsignedByte();
+            if (version != _RECORD_VERSION) {
+                throw new BlockStoreException("Unsupported transaction index record version: " + version);
+            }
+            byte[] blockHash = new byte[in.unpackInt()];
+            in.readFully(blockHash);
+            return new Location(blockHash, in.unpackInt());
+        } catch (IOException e) {
+            throw new BlockStoreException("Unable to read the transaction location.", e);
+        }
+    }
+
+    /**
+     * The block a transaction was confirmed in, and its position in the block.
+     */
+    public static final class Location {
+
+        private final byte[] blockHash;
+        private final int position;
+
+        private Location(byte[] blockHash, int position) {
+            this.blockHash = blockHash;
+            this.position = position;
+        }
+
+        public byte[] getBlockHash() {
+            return blockHash;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+    }
+
+}
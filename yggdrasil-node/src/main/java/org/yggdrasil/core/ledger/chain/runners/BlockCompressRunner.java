@@ -0,0 +1,29 @@
+package org.yggdrasil.core.ledger.chain.runners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yggdrasil.core.ledger.chain.Blockchain;
+
+import java.util.TimerTask;
+
+public class BlockCompressRunner extends TimerTask {
+
+    private Logger logger = LoggerFactory.getLogger(BlockCompressRunner.class);
+
+    private Blockchain blockchain;
+
+    public BlockCompressRunner(Blockchain blockchain) {
+        this.blockchain = blockchain;
+    }
+
+    @Override
+    public void run() {
+        try {
+            logger.trace("Compressing blocks that are old enough.");
+            this.blockchain.compressColdBlocks();
+        } catch (Exception e) {
+            logger.error("There was an issue compressing blocks: {}", e.getMessage());
+        }
+    }
+
+}
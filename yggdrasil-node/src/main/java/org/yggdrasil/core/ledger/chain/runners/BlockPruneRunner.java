@@ -0,0 +1,29 @@
+package org.yggdrasil.core.ledger.chain.runners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yggdrasil.core.ledger.chain.Blockchain;
+
+import java.util.TimerTask;
+
+public class BlockPruneRunner extends TimerTask {
+
+    private Logger logger = LoggerFactory.getLogger(BlockPruneRunner.class);
+
+    private Blockchain blockchain;
+
+    public BlockPruneRunner(Blockchain blockchain) {
+        this.blockchain = blockchain;
+    }
+
+    @Override
+    public void run() {
+        try {
+            logger.trace("Pruning old block bodies.");
+            this.blockchain.pruneBlocks();
+        } catch (Exception e) {
+            logger.error("There was an issue pruning blocks: {}", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package org.yggdrasil.core.ledger.chain.runners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yggdrasil.core.ledger.chain.Blockchain;
+
+import java.util.TimerTask;
+
+public class ChainCheckpointRunner extends TimerTask {
+
+    private Logger logger = LoggerFactory.getLogger(ChainCheckpointRunner.class);
+
+    private Blockchain blockchain;
+
+    public ChainCheckpointRunner(Blockchain blockchain) {
+        this.blockchain = blockchain;
+    }
+
+    @Override
+    public void run() {
+        try {
+            logger.trace("Writing a chain checkpoint.");
+            this.blockchain.writeCheckpoint();
+        } catch (Exception e) {
+            logger.error("There was an issue writing a chain checkpoint: {}", e.getMessage());
+        }
+    }
+
+}
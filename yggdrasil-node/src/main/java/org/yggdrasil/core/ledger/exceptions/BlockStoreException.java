@@ -0,0 +1,13 @@
+package org.yggdrasil.core.ledger.exceptions;
+
+public class BlockStoreException extends RuntimeException {
+
+    public BlockStoreException(String message) {
+        super(message);
+    }
+
+    public BlockStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -52,7 +52,9 @@ public class Transaction implements LedgerHashableItem {
         this.destinationAddress = builder.destinationAddress;
         this.txnInputs = builder.txnInputs;
         this.txnOutPuts = builder.txnOutPuts;
-        this.txnHash = CryptoHasher.hash(this);
+        this.signature = builder.signature;
+        // Txns read back from storage already carry their hash, so there is no need to compute it again
+        this.txnHash = builder.txnHash != null ? builder.txnHash : CryptoHasher.hash(this);
     }
 
     public ZonedDateTime getTimestamp() {
@@ -131,9 +133,25 @@ public class Transaction implements LedgerHashableItem {
         return CryptoHasher.humanReadableHash(txnHash);
     }
 
+    /**
+     * Returns the hash the origin signs, the hash of the txn without its signature.
+     *
+     * @return signingHash
+     * @throws NoSuchAlgorithmException
+     */
+    @JsonIgnore
+    public byte[] getSigningHash() throws NoSuchAlgorithmException {
+        return CryptoHasher.dhash(this.getDataBytes(false));
+    }
+
     @JsonIgnore
     @Override
     public byte[] getDataBytes() {
+        return this.getDataBytes(true);
+    }
+
+    // Private function to get the data bytes of the txn, with or without its signature
+    private byte[] getDataBytes(boolean withSignature) {
         byte[] txnData = new byte[0];
         txnData = appendBytes(txnData, SerializationUtils.serialize(this.timestamp));
         txnData = appendBytes(txnData, SerializationUtils.serialize(this.originAddress));
@@ -141,7 +159,9 @@ public class Transaction implements LedgerHashableItem {
         txnData = appendBytes(txnData, SerializationUtils.serialize(this.destinationAddress));
         txnData = appendBytes(txnData, SerializationUtils.serialize(this.txnInputs));
         txnData = appendBytes(txnData, SerializationUtils.serialize(this.txnOutPuts));
-        txnData = appendBytes(txnData, this.signature);
+        if(withSignature) {
+            txnData = appendBytes(txnData, this.signature);
+        }
         return txnData;
     }
 
@@ -157,6 +177,8 @@ public class Transaction implements LedgerHashableItem {
         protected String destinationAddress;
         protected TransactionInput[] txnInputs;
         protected TransactionOutput[] txnOutPuts;
+        protected byte[] signature;
+        protected byte[] txnHash;
 
         private Builder(){}
 
@@ -190,6 +212,16 @@ public class Transaction implements LedgerHashableItem {
             return this;
         }
 
+        public Builder setSignature(byte[] signature) {
+            this.signature = signature;
+            return this;
+        }
+
+        public Builder setTxnHash(byte[] txnHash) {
+            this.txnHash = txnHash;
+            return this;
+        }
+
         public static Builder builder() {
             return new Builder();
         }
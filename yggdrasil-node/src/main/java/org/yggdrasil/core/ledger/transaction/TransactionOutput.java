@@ -1,7 +1,7 @@
 package org.yggdrasil.core.ledger.transaction;
 
+import org.yggdrasil.core.ledger.SignatureVerifier;
 import org.yggdrasil.core.utils.CryptoHasher;
-import org.yggdrasil.core.utils.CryptoKeyGenerator;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
@@ -21,9 +21,12 @@ public class TransactionOutput implements Serializable {
     }
 
     public boolean isMine(PublicKey publicKey, byte[] signature) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
-        Signature verify = Signature.getInstance(CryptoKeyGenerator.getSignatureAlgorithm());
-        verify.initVerify(publicKey);
-        return CryptoHasher.isEqualHashes(this.address, CryptoHasher.generateWalletAddress(publicKey)) && verify.verify(signature);
+        return CryptoHasher.isEqualHashes(this.address, CryptoHasher.generateWalletAddress(publicKey))
+                && SignatureVerifier.verify(publicKey, new byte[0], signature);
+    }
+
+    public byte[] getAddress() {
+        return this.address;
     }
 
     public BigDecimal getValue() {
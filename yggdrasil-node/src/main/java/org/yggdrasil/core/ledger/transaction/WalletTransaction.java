@@ -1,14 +1,24 @@
 package org.yggdrasil.core.ledger.transaction;
 
+import org.yggdrasil.core.utils.MerkleProof;
+
 import java.math.BigDecimal;
-import java.util.List;
 
 public class WalletTransaction {
 
-    private List<byte[]> cMerkle;
+    // The proof that the txn is in its block
+    private MerkleProof merkleProof;
 
     public BigDecimal getCredits() {
         return BigDecimal.ONE;
     }
 
+    public MerkleProof getMerkleProof() {
+        return merkleProof;
+    }
+
+    public void setMerkleProof(MerkleProof merkleProof) {
+        this.merkleProof = merkleProof;
+    }
+
 }
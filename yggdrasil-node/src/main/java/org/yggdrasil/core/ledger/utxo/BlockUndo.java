@@ -0,0 +1,49 @@
+package org.yggdrasil.core.ledger.utxo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The undo record of a block: the unspent outputs that its txns spent, in the order they were
+ * spent. Disconnecting the block puts these outputs back, so the UTXO set can be rolled back
+ * without going through the history of the chain.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public final class BlockUndo {
+
+    // The keys of the spent outputs, (txn hash, output index)
+    private final List<byte[]> spentKeys;
+    // The spent outputs, in the same order as their keys
+    private final List<Coin> spentCoins;
+
+    public BlockUndo() {
+        this.spentKeys = new ArrayList<>();
+        this.spentCoins = new ArrayList<>();
+    }
+
+    /**
+     * Record an output spent by the block.
+     *
+     * @param key
+     * @param coin
+     */
+    public void addSpent(byte[] key, Coin coin) {
+        this.spentKeys.add(key);
+        this.spentCoins.add(coin);
+    }
+
+    public List<byte[]> getSpentKeys() {
+        return spentKeys;
+    }
+
+    public List<Coin> getSpentCoins() {
+        return spentCoins;
+    }
+
+    public int size() {
+        return this.spentKeys.size();
+    }
+
+}
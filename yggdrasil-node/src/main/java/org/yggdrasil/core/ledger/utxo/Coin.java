@@ -0,0 +1,85 @@
+package org.yggdrasil.core.ledger.utxo;
+
+import java.math.BigDecimal;
+
+/**
+ * A coin is an unspent transaction output: the address that is able to spend it, its value,
+ * the height of the block that created it and whether it was created by a coinbase txn.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public final class Coin {
+
+    // The address that the output was paid to
+    private final byte[] address;
+    // The value of the output
+    private final BigDecimal value;
+    // The height of the block whose txn created the output
+    private final long height;
+    // Whether the output was created by a coinbase txn
+    private final boolean coinbase;
+
+    private Coin(Builder builder) {
+        this.address = builder.address;
+        this.value = builder.value;
+        this.height = builder.height;
+        this.coinbase = builder.coinbase;
+    }
+
+    public byte[] getAddress() {
+        return address;
+    }
+
+    public BigDecimal getValue() {
+        return value;
+    }
+
+    public long getHeight() {
+        return height;
+    }
+
+    public boolean isCoinbase() {
+        return coinbase;
+    }
+
+    public static class Builder {
+
+        private byte[] address;
+        private BigDecimal value;
+        private long height;
+        private boolean coinbase;
+
+        private Builder() {}
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public Builder setAddress(byte[] address) {
+            this.address = address;
+            return this;
+        }
+
+        public Builder setValue(BigDecimal value) {
+            this.value = value;
+            return this;
+        }
+
+        public Builder setHeight(long height) {
+            this.height = height;
+            return this;
+        }
+
+        public Builder setCoinbase(boolean coinbase) {
+            this.coinbase = coinbase;
+            return this;
+        }
+
+        public Coin build() {
+            return new Coin(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,327 @@
+package org.yggdrasil.core.ledger.utxo;
+
+import org.mapdb.BTreeMap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * A write-back cache in front of the stored unspent outputs. Changes made while connecting and
+ * disconnecting blocks are kept in memory and only the net changes are written to the store
+ * when the cache is flushed, once it has grown past its memory budget or the flush interval
+ * has passed.
+ *
+ * Each cached entry is marked dirty when it differs from the store, and fresh when the store
+ * does not have it. Since most outputs are spent within a few blocks of being created, an
+ * output that is created and spent between two flushes (a fresh entry that is spent) is
+ * dropped from the cache without ever being written.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class CoinsCache {
+
+    // Rough in-memory size of a cached entry, not counting the key and address
+    private static final long _ENTRY_BASE_SIZE = 160;
+
+    // The stored unspent outputs, (txn hash, output index) -> coin
+    private final BTreeMap<byte[], Coin> coins;
+    // The estimated size (in bytes) of the cache that triggers a flush
+    private final long maxBytes;
+    // The longest time (in milliseconds) between flushes of dirty entries
+    private final long flushInterval;
+    // The cached entries, ordered so that the outputs of a txn can be found by its hash
+    private final TreeMap<byte[], Entry> entries;
+    private long bytes;
+    private long dirtyCount;
+    private long lastFlush;
+    private long hits;
+    private long misses;
+    private long cancelled;
+    private long flushes;
+    private long flushedEntries;
+    private long lastFlushMillis;
+    private long totalFlushMillis;
+    private final Object lock = new Object();
+
+    public CoinsCache(BTreeMap<byte[], Coin> coins, long maxBytes, long flushInterval) {
+        this.coins = coins;
+        this.maxBytes = maxBytes;
+        this.flushInterval = flushInterval;
+        this.entries = new TreeMap<>(Arrays::compareUnsigned);
+        this.lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Get an unspent output, loading it into the cache from the store on a miss.
+     *
+     * @param key
+     * @return coin, or null if the output is not unspent
+     */
+    public Coin get(byte[] key) {
+        synchronized (lock) {
+            this.count(this.entries.containsKey(key));
+            Entry entry = this.load(key);
+            return entry == null ? null : entry.coin;
+        }
+    }
+
+    /**
+     * Find an unspent output of a txn that matches the filter. The cached outputs of the txn are
+     * looked at first, and the store is only read when none of them match, in which case the
+     * lowest stored output that matches is loaded into the cache.
+     *
+     * @param txnHash
+     * @param filter
+     * @return key, or null if no output matches
+     */
+    public byte[] find(byte[] txnHash, Predicate<Coin> filter) {
+        synchronized (lock) {
+            byte[] upper = Arrays.copyOf(txnHash, txnHash.length + Integer.BYTES + 1);
+            Arrays.fill(upper, txnHash.length, upper.length, (byte) 0xFF);
+            NavigableMap<byte[], Entry> cached = this.entries.subMap(txnHash, true, upper, true);
+            for (Map.Entry<byte[], Entry> output : cached.entrySet()) {
+                if (output.getKey().length == txnHash.length + Integer.BYTES
+                        && output.getValue().coin != null && filter.test(output.getValue().coin)) {
+                    this.count(true);
+                    return output.getKey();
+                }
+            }
+            this.count(false);
+            // Stored outputs that are cached have been looked at already, or have been spent
+            for (Map.Entry<byte[], Coin> stored : this.coins.prefixSubMap(txnHash).entrySet()) {
+                if (stored.getKey().length == txnHash.length + Integer.BYTES
+                        && !cached.containsKey(stored.getKey()) && filter.test(stored.getValue())) {
+                    this.load(stored.getKey());
+                    return stored.getKey();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Add an unspent output. Outputs that are not in the cache are new, so the store does not
+     * have them.
+     *
+     * @param key
+     * @param coin
+     */
+    public void add(byte[] key, Coin coin) {
+        synchronized (lock) {
+            Entry entry = this.entries.get(key);
+            if (entry == null) {
+                entry = new Entry(null, true);
+                this.entries.put(key, entry);
+                this.bytes += weigh(key, coin);
+            } else if (entry.coin != null) {
+                this.bytes -= weigh(key, entry.coin);
+                this.bytes += weigh(key, coin);
+            } else {
+                this.bytes += weigh(key, coin) - weigh(key, null);
+            }
+            entry.coin = coin;
+            this.markDirty(entry);
+        }
+    }
+
+    /**
+     * Spend an unspent output. A fresh output is dropped from the cache, since the store never
+     * had it, otherwise it is kept as a dirty spent entry until the cache is flushed.
+     *
+     * @param key
+     * @return the coin that was spent, or null if the output is not unspent
+     */
+    public Coin spend(byte[] key) {
+        synchronized (lock) {
+            Entry entry = this.load(key);
+            if (entry == null || entry.coin == null) {
+                return null;
+            }
+            Coin coin = entry.coin;
+            if (entry.fresh) {
+                this.entries.remove(key);
+                this.bytes -= weigh(key, coin);
+                if (entry.dirty) {
+                    this.dirtyCount--;
+                }
+                this.cancelled++;
+            } else {
+                this.bytes -= weigh(key, coin) - weigh(key, null);
+                entry.coin = null;
+                this.markDirty(entry);
+            }
+            return coin;
+        }
+    }
+
+    /**
+     * Returns whether the cache is due to be flushed, because it has grown past its memory budget
+     * or it has held dirty entries for longer than the flush interval.
+     *
+     * @return shouldFlush
+     */
+    public boolean shouldFlush() {
+        synchronized (lock) {
+            return this.bytes >= this.maxBytes
+                    || (this.dirtyCount > 0 && System.currentTimeMillis() - this.lastFlush >= this.flushInterval);
+        }
+    }
+
+    /**
+     * Write the dirty entries to the store. If the cache is still over its memory budget, the
+     * clean entries are dropped as well.
+     *
+     * @return the number of entries written
+     */
+    public long flush() {
+        synchronized (lock) {
+            long startTime = System.currentTimeMillis();
+            long written = 0;
+            Iterator<Map.Entry<byte[], Entry>> iterator = this.entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<byte[], Entry> cached = iterator.next();
+                Entry entry = cached.getValue();
+                if (entry.dirty) {
+                    if (entry.coin == null) {
+                        this.coins.remove(cached.getKey());
+                    } else {
+                        this.coins.put(cached.getKey(), entry.coin);
+                    }
+                    entry.dirty = false;
+                    entry.fresh = false;
+                    written++;
+                }
+                // Spent entries have been written, there is no reason to keep them around
+                if (entry.coin == null) {
+                    this.bytes -= weigh(cached.getKey(), null);
+                    iterator.remove();
+                }
+            }
+            this.dirtyCount = 0;
+            if (this.bytes >= this.maxBytes) {
+                this.entries.clear();
+                this.bytes = 0;
+            }
+            this.lastFlush = System.currentTimeMillis();
+            this.lastFlushMillis = this.lastFlush - startTime;
+            this.totalFlushMillis += this.lastFlushMillis;
+            this.flushes++;
+            this.flushedEntries += written;
+            return written;
+        }
+    }
+
+    /**
+     * Drop every entry, including the ones that have not been flushed.
+     */
+    public void clear() {
+        synchronized (lock) {
+            this.entries.clear();
+            this.coins.clear();
+            this.bytes = 0;
+            this.dirtyCount = 0;
+        }
+    }
+
+    /**
+     * Returns the number of unspent outputs, counting the changes that have not been flushed.
+     *
+     * @return size
+     */
+    public long size() {
+        synchronized (lock) {
+            long size = this.coins.sizeLong();
+            for (Entry entry : this.entries.values()) {
+                if (entry.fresh && entry.coin != null) {
+                    size++;
+                } else if (!entry.fresh && entry.coin == null) {
+                    size--;
+                }
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Returns the cache counters, for reporting.
+     *
+     * @return stats
+     */
+    public Map<String, Long> getStats() {
+        synchronized (lock) {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("hits", this.hits);
+            stats.put("misses", this.misses);
+            stats.put("hitRate", this.hits + this.misses == 0 ? 0 : this.hits * 100 / (this.hits + this.misses));
+            stats.put("entries", (long) this.entries.size());
+            stats.put("dirty", this.dirtyCount);
+            stats.put("bytes", this.bytes);
+            stats.put("maxBytes", this.maxBytes);
+            stats.put("cancelled", this.cancelled);
+            stats.put("flushes", this.flushes);
+            stats.put("flushedEntries", this.flushedEntries);
+            stats.put("lastFlushMillis", this.lastFlushMillis);
+            stats.put("averageFlushMillis", this.flushes == 0 ? 0 : this.totalFlushMillis / this.flushes);
+            return stats;
+        }
+    }
+
+    // Count a lookup of the cache, by whether it was answered without reading the store
+    private void count(boolean hit) {
+        if (hit) {
+            this.hits++;
+        } else {
+            this.misses++;
+        }
+    }
+
+    // Get the cached entry for a key, reading it from the store if it is not cached. Outputs that
+    // are not unspent are not cached. Lookups are counted by the public functions, not here, so
+    // that spending an output that was just found is not counted twice.
+    private Entry load(byte[] key) {
+        Entry entry = this.entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        Coin coin = this.coins.get(key);
+        if (coin == null) {
+            return null;
+        }
+        entry = new Entry(coin, false);
+        this.entries.put(key, entry);
+        this.bytes += weigh(key, coin);
+        return entry;
+    }
+
+    private void markDirty(Entry entry) {
+        if (!entry.dirty) {
+            entry.dirty = true;
+            this.dirtyCount++;
+        }
+    }
+
+    private static long weigh(byte[] key, Coin coin) {
+        return _ENTRY_BASE_SIZE + key.length + (coin == null || coin.getAddress() == null ? 0 : coin.getAddress().length);
+    }
+
+    private static final class Entry {
+        // The unspent output, or null once it has been spent
+        private Coin coin;
+        // The store does not have this output
+        private boolean fresh;
+        // The entry differs from the store
+        private boolean dirty;
+
+        private Entry(Coin coin, boolean fresh) {
+            this.coin = coin;
+            this.fresh = fresh;
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+package org.yggdrasil.core.ledger.utxo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yggdrasil.core.ledger.chain.Block;
+import org.yggdrasil.core.ledger.transaction.Transaction;
+import org.yggdrasil.core.ledger.transaction.TransactionInput;
+import org.yggdrasil.core.ledger.transaction.TransactionOutPoint;
+import org.yggdrasil.core.ledger.transaction.TransactionOutput;
+import org.yggdrasil.core.utils.CryptoHasher;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The UTXO set holds every unspent output of the main chain, keyed by the hash of the txn that
+ * created it and the output's position in that txn. Checking that an input spends an unspent
+ * output is a lookup in the set, rather than a search back through the blocks.
+ *
+ * Connecting a block returns its {@link BlockUndo}, the outputs that the block spent, and
+ * disconnecting the block puts them back from the undo record in time proportional to the
+ * size of the block.
+ *
+ * The outputs are kept in a MapDB BTree in the chain database, so the set lives on disk (memory
+ * mapped where supported) rather than on the heap. Changes to the unspent outputs go through a
+ * write-back {@link CoinsCache} and only reach the store when the cache is flushed, so the
+ * stored set is as of the flushed height, which may be behind the height of the set.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class UtxoSet {
+
+    private final Logger logger = LoggerFactory.getLogger(UtxoSet.class);
+
+    // The unspent outputs, (txn hash, output index) -> coin
+    private final CoinsCache coins;
+    // The height of the last block applied to the set, -1 if none have been
+    private long height;
+    // The height of the last block whose changes have been flushed to the store
+    private long flushedHeight;
+
+    public UtxoSet(CoinsCache coins, long height) {
+        this.coins = coins;
+        this.height = height;
+        this.flushedHeight = height;
+    }
+
+    public long getHeight() {
+        return this.height;
+    }
+
+    public long getFlushedHeight() {
+        return this.flushedHeight;
+    }
+
+    public long size() {
+        return this.coins.size();
+    }
+
+    public CoinsCache getCoinsCache() {
+        return this.coins;
+    }
+
+    /**
+     * Write the changes held in the coins cache to the store.
+     *
+     * @return the number of outputs written
+     */
+    public long flush() {
+        long written = this.coins.flush();
+        this.flushedHeight = this.height;
+        return written;
+    }
+
+    /**
+     * Get an unspent output by the txn that created it and its position in the txn.
+     *
+     * @param txnHash
+     * @param index
+     * @return coin
+     */
+    public Optional<Coin> getCoin(byte[] txnHash, int index) {
+        return Optional.ofNullable(this.coins.get(coinKey(txnHash, index)));
+    }
+
+    /**
+     * Find the unspent output that an outpoint refers to. Outpoints name the txn and the value of
+     * the output, not its position, so the first unspent output of the txn with the same value
+     * (and paid to the address, if one is given) is the one that is spent.
+     *
+     * @param txnOutPt
+     * @param address the address spending the output, or null to match any address
+     * @return coin key
+     */
+    public Optional<byte[]> findCoin(TransactionOutPoint txnOutPt, byte[] address) {
+        if (txnOutPt == null || txnOutPt.getTxnHash() == null || txnOutPt.getValue() == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(this.coins.find(txnOutPt.getTxnHash(), coin -> coin.getValue().compareTo(txnOutPt.getValue()) == 0
+                && (address == null || Arrays.equals(address, coin.getAddress()))));
+    }
+
+    /**
+     * Returns whether the output an input refers to is unspent.
+     *
+     * @param txn
+     * @param txnIn
+     * @return isUnspent
+     */
+    public boolean isUnspent(Transaction txn, TransactionInput txnIn) {
+        return this.findCoin(txnIn.getTxnOutPt(), getSpendingAddress(txn)).isPresent();
+    }
+
+    /**
+     * Apply a block of the main chain to the set: the outputs its txns spend are removed and
+     * recorded in the block's undo record, and the outputs they create are added. A block with
+     * an input that does not spend an unspent output is rejected, and the set is left as it was.
+     *
+     * @param block
+     * @param height
+     * @return undo
+     */
+    public BlockUndo connectBlock(Block block, long height) {
+        BlockUndo undo = new BlockUndo();
+        List<byte[]> added = new ArrayList<>();
+        if (block.getData() != null) {
+            for (Transaction txn : block.getData()) {
+                if (!txn.isCoinbase()) {
+                    if (txn.getTxnInputs() == null || txn.getTxnInputs().length == 0) {
+                        this.revert(undo, added);
+                        throw new RuntimeException("Txn " + txn + " in block " + block + " has no inputs.");
+                    }
+                    byte[] address = getSpendingAddress(txn);
+                    for (TransactionInput txnIn : txn.getTxnInputs()) {
+                        Optional<byte[]> coinKey = this.findCoin(txnIn.getTxnOutPt(), address);
+                        if (coinKey.isEmpty()) {
+                            this.revert(undo, added);
+                            logger.warn("Block {} at height {} spends an output that is not in the UTXO set.", block, height);
+                            throw new RuntimeException("Txn " + txn + " in block " + block + " spends an output that is not unspent.");
+                        }
+                        Coin coin = this.coins.spend(coinKey.get());
+                        undo.addSpent(coinKey.get(), coin);
+                    }
+                }
+                TransactionOutput[] txnOuts = txn.getTxnOutPuts();
+                for (int i = 0; txnOuts != null && i < txnOuts.length; i++) {
+                    byte[] coinKey = coinKey(txn.getTxnHash(), i);
+                    this.coins.add(coinKey, Coin.Builder.builder()
+                            .setAddress(txnOuts[i].getAddress())
+                            .setValue(txnOuts[i].getValue())
+                            .setHeight(height)
+                            .setCoinbase(txn.isCoinbase())
+                            .build());
+                    added.add(coinKey);
+                }
+            }
+        }
+        this.height = height;
+        return undo;
+    }
+
+    // Private function to take back the changes of a block that was only partly connected
+    private void revert(BlockUndo undo, List<byte[]> added) {
+        // Outputs created and spent within the block are put back and then removed again
+        for (int i = 0; i < undo.size(); i++) {
+            this.coins.add(undo.getSpentKeys().get(i), undo.getSpentCoins().get(i));
+        }
+        for (int i = added.size() - 1; i >= 0; i--) {
+            this.coins.spend(added.get(i));
+        }
+    }
+
+    /**
+     * Undo a block of the main chain: the outputs it spent are put back from its undo record,
+     * and the outputs its txns created are removed.
+     *
+     * @param block
+     * @param undo the undo record written when the block was connected, or null if there is none
+     * @param height
+     */
+    public void disconnectBlock(Block block, BlockUndo undo, long height) {
+        if (undo == null) {
+            if (this.hasSpends(block)) {
+                logger.warn("There is no undo record for block {} at height {}, the outputs it spent cannot be restored.", block, height);
+            }
+        } else {
+            for (int i = 0; i < undo.size(); i++) {
+                this.coins.add(undo.getSpentKeys().get(i), undo.getSpentCoins().get(i));
+            }
+        }
+        if (block.getData() != null) {
+            List<Transaction> txns = block.getData();
+            for (int t = txns.size() - 1; t >= 0; t--) {
+                TransactionOutput[] txnOuts = txns.get(t).getTxnOutPuts();
+                for (int i = 0; txnOuts != null && i < txnOuts.length; i++) {
+                    this.coins.spend(coinKey(txns.get(t).getTxnHash(), i));
+                }
+            }
+        }
+        this.height = height - 1;
+    }
+
+    public void clear() {
+        this.coins.clear();
+        this.height = -1;
+        this.flushedHeight = -1;
+    }
+
+    private boolean hasSpends(Block block) {
+        return block.getData() != null && block.getData().stream().anyMatch(txn -> !txn.isCoinbase());
+    }
+
+    // The address of the wallet spending the txn's inputs
+    private static byte[] getSpendingAddress(Transaction txn) {
+        return txn.getOriginAddress() == null ? null : CryptoHasher.hashByteArray(txn.getOriginAddress());
+    }
+
+    /**
+     * Returns the key of an output, the hash of its txn followed by its position in the txn.
+     *
+     * @param txnHash
+     * @param index
+     * @return key
+     */
+    public static byte[] coinKey(byte[] txnHash, int index) {
+        return ByteBuffer.allocate(txnHash.length + Integer.BYTES).put(txnHash).putInt(index).array();
+    }
+
+}
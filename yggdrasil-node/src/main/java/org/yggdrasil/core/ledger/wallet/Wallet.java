@@ -113,7 +113,7 @@ public class Wallet implements LedgerHashableItem {
 
     public void signTxn(Transaction txn) throws InvalidKeyException, SignatureException, NoSuchAlgorithmException {
         signature.initSign(privateKey);
-        byte[] txnData = txn.getTxnHash();
+        byte[] txnData = txn.getSigningHash();
         signature.update(txnData, 0, txnData.length);
         txn.setSignature(signature.sign());
         txn.rehash();
@@ -0,0 +1,45 @@
+package org.yggdrasil.core.serialization;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+import org.yggdrasil.core.ledger.chain.BlockHeader;
+
+import java.io.IOException;
+
+/**
+ * Storage serializer for block headers. Writes a codec version followed by the
+ * fixed-width header fields and the length-prefixed hashes.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class BlockHeaderSerializer implements Serializer<BlockHeader> {
+
+    public static final int CODEC_VERSION = 1;
+
+    @Override
+    public void serialize(DataOutput2 out, BlockHeader header) throws IOException {
+        out.writeByte(CODEC_VERSION);
+        out.writeInt(header.getVersion());
+        CodecUtil.writeBytes(out, header.getPreviousBlockHash());
+        CodecUtil.writeBytes(out, header.getMerkleRoot());
+        CodecUtil.writeTime(out, header.getTime());
+        out.writeInt(header.getDiff());
+        out.writeInt(header.getNonce());
+    }
+
+    @Override
+    public BlockHeader deserialize(DataInput2 in, int available) throws IOException {
+        CodecUtil.checkVersion(in.readUnsignedByte(), CODEC_VERSION, "block header");
+        return BlockHeader.Builder.builder()
+                .setVersion(in.readInt())
+                .setPreviousBlockHash(CodecUtil.readBytes(in))
+                .setMerkleRoot(CodecUtil.readBytes(in))
+                .setTime(CodecUtil.readTime(in))
+                .setDiff(in.readInt())
+                .setNonce(in.readInt())
+                .build();
+    }
+
+}
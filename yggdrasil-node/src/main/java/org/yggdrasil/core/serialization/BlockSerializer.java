@@ -0,0 +1,76 @@
+package org.yggdrasil.core.serialization;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+import org.yggdrasil.core.ledger.chain.Block;
+import org.yggdrasil.core.ledger.transaction.Transaction;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage serializer for blocks, used for the block cache and archive instead of
+ * Java serialization. A block is written as a codec version, the header, the block
+ * height, the block hash and the length-prefixed list of txns.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class BlockSerializer implements Serializer<Block> {
+
+    public static final int CODEC_VERSION = 1;
+
+    private final BlockHeaderSerializer headerSerializer = new BlockHeaderSerializer();
+    private final TransactionSerializer txnSerializer = new TransactionSerializer();
+
+    @Override
+    public void serialize(DataOutput2 out, Block block) throws IOException {
+        out.writeByte(CODEC_VERSION);
+        out.writeBoolean(block.getHeader() != null);
+        if (block.getHeader() != null) {
+            headerSerializer.serialize(out, block.getHeader());
+        }
+        CodecUtil.writeInteger(out, block.getBlockHeight());
+        CodecUtil.writeBytes(out, block.getBlockHash());
+        List<Transaction> data = block.getData();
+        out.packInt(data == null ? 0 : data.size() + 1);
+        if (data != null) {
+            for (Transaction txn : data) {
+                txnSerializer.serialize(out, txn);
+            }
+        }
+    }
+
+    @Override
+    public Block deserialize(DataInput2 in, int available) throws IOException {
+        return this.readBlock(in, in.readUnsignedByte());
+    }
+
+    // Decode the rest of a block whose codec version byte has already been read
+    Block readBlock(DataInput2 in, int version) throws IOException {
+        CodecUtil.checkVersion(version, CODEC_VERSION, "block");
+        Block.Builder builder = Block.Builder.builder();
+        if (in.readBoolean()) {
+            builder.setBlockHeader(headerSerializer.deserialize(in, -1));
+        }
+        builder.setBlockHeight(CodecUtil.readInteger(in));
+        builder.setBlockHash(CodecUtil.readBytes(in));
+        int txnCount = in.unpackInt();
+        if (txnCount > 0) {
+            List<Transaction> data = new ArrayList<>(txnCount - 1);
+            for (int i = 0; i < txnCount - 1; i++) {
+                data.add(txnSerializer.deserialize(in, -1));
+            }
+            builder.setData(data);
+        }
+        try {
+            return builder.build();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unable to rebuild block from storage.", e);
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.yggdrasil.core.serialization;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+import org.yggdrasil.core.ledger.utxo.BlockUndo;
+
+import java.io.IOException;
+
+/**
+ * Storage serializer for block undo records. Writes a codec version and the packed
+ * number of spent outputs, followed by the key and coin of each.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class BlockUndoSerializer implements Serializer<BlockUndo> {
+
+    public static final int CODEC_VERSION = 1;
+
+    private final CoinSerializer coinSerializer = new CoinSerializer();
+
+    @Override
+    public void serialize(DataOutput2 out, BlockUndo undo) throws IOException {
+        out.writeByte(CODEC_VERSION);
+        out.packInt(undo.size());
+        for (int i = 0; i < undo.size(); i++) {
+            CodecUtil.writeBytes(out, undo.getSpentKeys().get(i));
+            this.coinSerializer.serialize(out, undo.getSpentCoins().get(i));
+        }
+    }
+
+    @Override
+    public BlockUndo deserialize(DataInput2 in, int available) throws IOException {
+        CodecUtil.checkVersion(in.readUnsignedByte(), CODEC_VERSION, "block undo");
+        BlockUndo undo = new BlockUndo();
+        int count = in.unpackInt();
+        for (int i = 0; i < count; i++) {
+            undo.addSpent(CodecUtil.readBytes(in), this.coinSerializer.deserialize(in, -1));
+        }
+        return undo;
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.yggdrasil.core.serialization;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.yggdrasil.core.utils.DateTimeUtil;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+
+/**
+ * Shared field encodings for the storage serializers. Arrays and strings are written
+ * with a packed length prefix of length + 1, so that a prefix of 0 can mark a null value.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+final class CodecUtil {
+
+    private CodecUtil() {}
+
+    static void writeBytes(DataOutput2 out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.packInt(0);
+            return;
+        }
+        out.packInt(bytes.length + 1);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInput2 in) throws IOException {
+        int length = in.unpackInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeString(DataOutput2 out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(DataInput2 in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeDecimal(DataOutput2 out, BigDecimal value) throws IOException {
+        if (value == null) {
+            out.packInt(0);
+            return;
+        }
+        writeBytes(out, value.unscaledValue().toByteArray());
+        out.writeInt(value.scale());
+    }
+
+    static BigDecimal readDecimal(DataInput2 in) throws IOException {
+        byte[] unscaled = readBytes(in);
+        if (unscaled == null) {
+            return null;
+        }
+        return new BigDecimal(new BigInteger(unscaled), in.readInt());
+    }
+
+    static void writeInteger(DataOutput2 out, BigInteger value) throws IOException {
+        writeBytes(out, value == null ? null : value.toByteArray());
+    }
+
+    static BigInteger readInteger(DataInput2 in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new BigInteger(bytes);
+    }
+
+    // Timestamps are stored in UTC as epoch seconds and nanos
+    static void writeTime(DataOutput2 out, ZonedDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.toEpochSecond());
+            out.writeInt(time.getNano());
+        }
+    }
+
+    static ZonedDateTime readTime(DataInput2 in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long epochSecond = in.readLong();
+        return DateTimeUtil.fromEpochSecond(epochSecond, in.readInt());
+    }
+
+    static void checkVersion(int version, int supported, String type) throws IOException {
+        if (version != supported) {
+            throw new IOException("Unsupported " + type + " codec version: " + version);
+        }
+    }
+
+}
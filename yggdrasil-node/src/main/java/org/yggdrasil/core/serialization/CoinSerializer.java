@@ -0,0 +1,42 @@
+package org.yggdrasil.core.serialization;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.serializer.GroupSerializerObjectArray;
+import org.yggdrasil.core.ledger.utxo.Coin;
+
+import java.io.IOException;
+
+/**
+ * Storage serializer for coins in the UTXO set. Writes a codec version, the coinbase
+ * flag, the packed height, the address and the value. Coins are kept in BTrees, so the
+ * serializer is a group serializer that stores the values of a node as an array.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class CoinSerializer extends GroupSerializerObjectArray<Coin> {
+
+    public static final int CODEC_VERSION = 1;
+
+    @Override
+    public void serialize(DataOutput2 out, Coin coin) throws IOException {
+        out.writeByte(CODEC_VERSION);
+        out.writeBoolean(coin.isCoinbase());
+        out.packLong(coin.getHeight());
+        CodecUtil.writeBytes(out, coin.getAddress());
+        CodecUtil.writeDecimal(out, coin.getValue());
+    }
+
+    @Override
+    public Coin deserialize(DataInput2 in, int available) throws IOException {
+        CodecUtil.checkVersion(in.readUnsignedByte(), CODEC_VERSION, "coin");
+        return Coin.Builder.builder()
+                .setCoinbase(in.readBoolean())
+                .setHeight(in.unpackLong())
+                .setAddress(CodecUtil.readBytes(in))
+                .setValue(CodecUtil.readDecimal(in))
+                .build();
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.yggdrasil.core.serialization;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+import org.yggdrasil.core.ledger.chain.Block;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Storage serializer for the compressed cold tier of the block archive. A block is encoded with
+ * the {@link BlockSerializer} and deflated, and written as a format marker, the packed encoded
+ * length, the packed deflated length and the deflated bytes.
+ *
+ * Reading accepts both compressed records and the plain records written by the
+ * {@link BlockSerializer}, which start with the block codec version rather than the marker, so
+ * a store can hold a mix of the two while its older blocks are being compressed.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class CompressedBlockSerializer implements Serializer<Block> {
+
+    // The first byte of a compressed record, which is never a block codec version
+    public static final int COMPRESSED_FORMAT = 0xC0;
+
+    private final BlockSerializer blockSerializer = new BlockSerializer();
+    // The deflate compression level, 1 (fastest) to 9 (smallest)
+    private final int level;
+
+    public CompressedBlockSerializer(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public void serialize(DataOutput2 out, Block block) throws IOException {
+        DataOutput2 encoded = new DataOutput2();
+        this.blockSerializer.serialize(encoded, block);
+        Deflater deflater = new Deflater(this.level);
+        try {
+            deflater.setInput(encoded.buf, 0, encoded.pos);
+            deflater.finish();
+            byte[] deflated = new byte[Math.max(64, encoded.pos / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == deflated.length) {
+                    deflated = Arrays.copyOf(deflated, deflated.length * 2);
+                }
+                length += deflater.deflate(deflated, length, deflated.length - length);
+            }
+            out.writeByte(COMPRESSED_FORMAT);
+            out.packInt(encoded.pos);
+            out.packInt(length);
+            out.write(deflated, 0, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public Block deserialize(DataInput2 in, int available) throws IOException {
+        int format = in.readUnsignedByte();
+        if (format != COMPRESSED_FORMAT) {
+            return this.blockSerializer.readBlock(in, format);
+        }
+        byte[] encoded = new byte[in.unpackInt()];
+        byte[] deflated = new byte[in.unpackInt()];
+        in.readFully(deflated);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            int length = 0;
+            while (length < encoded.length && !inflater.finished()) {
+                int inflated = inflater.inflate(encoded, length, encoded.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new IOException("Compressed block record is truncated.");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed block record is corrupt.", e);
+        } finally {
+            inflater.end();
+        }
+        return this.blockSerializer.deserialize(new DataInput2.ByteArray(encoded), encoded.length);
+    }
+
+    /**
+     * Returns whether a stored record starts with the compressed format marker.
+     *
+     * @param firstByte
+     * @return isCompressed
+     */
+    public static boolean isCompressed(byte firstByte) {
+        return (firstByte & 0xFF) == COMPRESSED_FORMAT;
+    }
+
+}
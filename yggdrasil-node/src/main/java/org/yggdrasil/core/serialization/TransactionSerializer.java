@@ -0,0 +1,116 @@
+package org.yggdrasil.core.serialization;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+import org.yggdrasil.core.ledger.transaction.Transaction;
+import org.yggdrasil.core.ledger.transaction.TransactionInput;
+import org.yggdrasil.core.ledger.transaction.TransactionOutPoint;
+import org.yggdrasil.core.ledger.transaction.TransactionOutput;
+import org.yggdrasil.core.utils.CryptoKeyGenerator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+
+/**
+ * Storage serializer for txns. The origin public key is stored in its X.509 encoding
+ * and the txn hash and signature are stored as-is, so that reading a txn back does
+ * not require it to be hashed again.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class TransactionSerializer implements Serializer<Transaction> {
+
+    public static final int CODEC_VERSION = 1;
+
+    @Override
+    public void serialize(DataOutput2 out, Transaction txn) throws IOException {
+        out.writeByte(CODEC_VERSION);
+        CodecUtil.writeTime(out, txn.getTimestamp());
+        CodecUtil.writeString(out, txn.getOriginAddress());
+        CodecUtil.writeBytes(out, txn.getOrigin() == null ? null : txn.getOrigin().getEncoded());
+        CodecUtil.writeString(out, txn.getDestinationAddress());
+        TransactionInput[] txnInputs = txn.getTxnInputs();
+        out.packInt(txnInputs == null ? 0 : txnInputs.length + 1);
+        if (txnInputs != null) {
+            for (TransactionInput txnInput : txnInputs) {
+                TransactionOutPoint txnOutPt = txnInput.getTxnOutPt();
+                out.writeBoolean(txnOutPt != null);
+                if (txnOutPt != null) {
+                    CodecUtil.writeBytes(out, txnOutPt.getBlkHash());
+                    CodecUtil.writeBytes(out, txnOutPt.getTxnHash());
+                    CodecUtil.writeDecimal(out, txnOutPt.getValue());
+                }
+                CodecUtil.writeDecimal(out, txnInput.getValue());
+            }
+        }
+        TransactionOutput[] txnOutputs = txn.getTxnOutPuts();
+        out.packInt(txnOutputs == null ? 0 : txnOutputs.length + 1);
+        if (txnOutputs != null) {
+            for (TransactionOutput txnOutput : txnOutputs) {
+                CodecUtil.writeBytes(out, txnOutput.getAddress());
+                CodecUtil.writeDecimal(out, txnOutput.getValue());
+            }
+        }
+        CodecUtil.writeBytes(out, txn.getSignature());
+        CodecUtil.writeBytes(out, txn.getTxnHash());
+    }
+
+    @Override
+    public Transaction deserialize(DataInput2 in, int available) throws IOException {
+        CodecUtil.checkVersion(in.readUnsignedByte(), CODEC_VERSION, "txn");
+        Transaction.Builder builder = Transaction.Builder.builder()
+                .setTimestamp(CodecUtil.readTime(in))
+                .setOriginAddress(CodecUtil.readString(in))
+                .setOriginPublicKey(readPublicKey(CodecUtil.readBytes(in)))
+                .setDestinationAddress(CodecUtil.readString(in));
+        int inputCount = in.unpackInt();
+        if (inputCount > 0) {
+            TransactionInput[] txnInputs = new TransactionInput[inputCount - 1];
+            for (int i = 0; i < txnInputs.length; i++) {
+                TransactionOutPoint txnOutPt = null;
+                if (in.readBoolean()) {
+                    txnOutPt = new TransactionOutPoint(CodecUtil.readBytes(in), CodecUtil.readBytes(in), CodecUtil.readDecimal(in));
+                }
+                BigDecimal value = CodecUtil.readDecimal(in);
+                // Inputs built from an out point share its value, keep it that way so the
+                // Java serialized txn data (and therefore a rehash) comes out the same.
+                if (txnOutPt != null && value != null && value.equals(txnOutPt.getValue())) {
+                    value = txnOutPt.getValue();
+                }
+                txnInputs[i] = new TransactionInput(txnOutPt, value);
+            }
+            builder.setTxnInputs(txnInputs);
+        }
+        int outputCount = in.unpackInt();
+        if (outputCount > 0) {
+            TransactionOutput[] txnOutputs = new TransactionOutput[outputCount - 1];
+            for (int i = 0; i < txnOutputs.length; i++) {
+                txnOutputs[i] = new TransactionOutput(CodecUtil.readBytes(in), CodecUtil.readDecimal(in));
+            }
+            builder.setTxnOutputs(txnOutputs);
+        }
+        builder.setSignature(CodecUtil.readBytes(in));
+        builder.setTxnHash(CodecUtil.readBytes(in));
+        try {
+            return builder.build();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to rebuild txn from storage.", e);
+        }
+    }
+
+    private static PublicKey readPublicKey(byte[] encoded) throws IOException {
+        if (encoded == null) {
+            return null;
+        }
+        try {
+            return CryptoKeyGenerator.readPublicKeyFromBytes(encoded);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to decode the txn origin public key.", e);
+        }
+    }
+
+}
@@ -7,10 +7,14 @@ import org.yggdrasil.core.ledger.transaction.Transaction;
 import org.yggdrasil.node.network.messages.MessagePayload;
 import org.yggdrasil.node.network.messages.util.DataUtil;
 
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The CryptoHasher provides useful tooling for hashing transactions and blocks using
@@ -19,12 +23,33 @@ import java.util.List;
  * in case in the future there is the desire to hash either one with different
  * algorithms.
  *
+ * Hashing uses a digest kept per thread rather than looking the algorithm up and allocating
+ * a digest for every hash. Besides the byte array functions there are overloads for part of an
+ * array, for the remaining bytes of a {@link ByteBuffer}, and for writing the hash into a
+ * buffer owned by the caller.
+ *
  * @since 0.0.3
  * @author nathanielbunch
  */
 public class CryptoHasher {
 
     private static final String _HASH_ALGORITHM = "SHA-256";
+    // The length (in bytes) of a hash
+    public static final int HASH_LENGTH = 32;
+    // The number of wallet addresses kept, and their estimated size (in bytes) with their key each
+    private static final int _ADDRESS_CACHE_ENTRIES = 10000;
+    private static final int _ADDRESS_BYTES = 128;
+    // Wallet addresses, by the encoding of their public key
+    private static final SegmentedLruCache<ByteBuffer, byte[]> _WALLET_ADDRESSES = new SegmentedLruCache<>(
+            _ADDRESS_CACHE_ENTRIES, (long) _ADDRESS_CACHE_ENTRIES * _ADDRESS_BYTES, address -> _ADDRESS_BYTES);
+    // The digest of each thread, reused for every hash made on the thread
+    private static final ThreadLocal<MessageDigest> _DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The " + _HASH_ALGORITHM + " digest is not available.", e);
+        }
+    });
 
     /**
      * Function for hashing items that support hashing (txns, blocks, etc).
@@ -54,27 +79,124 @@ public class CryptoHasher {
      *
      */
     public static byte[] dhash(byte[] object) throws NoSuchAlgorithmException {
-        return MessageDigest.getInstance(_HASH_ALGORITHM)
-                .digest(MessageDigest.getInstance(_HASH_ALGORITHM)
-                        .digest(object));
+        return CryptoHasher.dhash(object, 0, object.length);
+    }
+
+    /**
+     * Hashes part of an array twice.
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @return hash
+     */
+    public static byte[] dhash(byte[] data, int offset, int length) {
+        byte[] hash = new byte[HASH_LENGTH];
+        CryptoHasher.dhash(data, offset, length, hash, 0);
+        return hash;
+    }
+
+    /**
+     * Hashes the remaining bytes of a buffer twice, moving the position of the buffer to its
+     * limit.
+     *
+     * @param data
+     * @return hash
+     */
+    public static byte[] dhash(ByteBuffer data) {
+        MessageDigest digest = CryptoHasher.digest();
+        digest.update(data);
+        return digest.digest(digest.digest());
+    }
+
+    /**
+     * Hashes part of an array twice, writing the hash into the output array at the given
+     * offset, so hashing many items does not allocate an array for each.
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @param out
+     * @param outOffset
+     */
+    public static void dhash(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        MessageDigest digest = CryptoHasher.digest();
+        try {
+            digest.update(data, offset, length);
+            digest.digest(out, outOffset, HASH_LENGTH);
+            digest.update(out, outOffset, HASH_LENGTH);
+            digest.digest(out, outOffset, HASH_LENGTH);
+        } catch (DigestException e) {
+            digest.reset();
+            throw new IllegalArgumentException("The output does not have room for the hash.", e);
+        }
     }
 
     public static byte[] shash(byte[] object) throws NoSuchAlgorithmException {
-        return MessageDigest.getInstance(_HASH_ALGORITHM)
-                .digest(object);
+        return CryptoHasher.shash(object, 0, object.length);
     }
 
     /**
-     * Hashes a wallet address.
+     * Hashes part of an array once.
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @return hash
+     */
+    public static byte[] shash(byte[] data, int offset, int length) {
+        MessageDigest digest = CryptoHasher.digest();
+        digest.update(data, offset, length);
+        return digest.digest();
+    }
+
+    /**
+     * Hashes the remaining bytes of a buffer once, moving the position of the buffer to its
+     * limit.
+     *
+     * @param data
+     * @return hash
+     */
+    public static byte[] shash(ByteBuffer data) {
+        MessageDigest digest = CryptoHasher.digest();
+        digest.update(data);
+        return digest.digest();
+    }
+
+    // Private function to get the digest of the current thread, reset in case a previous
+    // hash on the thread was abandoned part way through
+    private static MessageDigest digest() {
+        MessageDigest digest = _DIGEST.get();
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Hashes a wallet address. The address of a key is checked every time one of its txns is,
+     * so the addresses of recently seen keys are cached.
      */
     public static byte[] generateWalletAddress(PublicKey publicKey) throws NoSuchAlgorithmException {
-        byte[] encodedPk = CryptoHasher.shash(publicKey.getEncoded());
-        // seems to always be 20 bits from some experimenting
-        byte[] address = new byte[20];
-        RIPEMD160Digest rpmd160 = new RIPEMD160Digest();
-        rpmd160.update(encodedPk, 0, encodedPk.length);
-        rpmd160.doFinal(address, 0);
-        return address;
+        ByteBuffer cacheKey = ByteBuffer.wrap(publicKey.getEncoded());
+        byte[] address = _WALLET_ADDRESSES.get(cacheKey);
+        if (address == null) {
+            byte[] encodedPk = CryptoHasher.shash(cacheKey.array());
+            // seems to always be 20 bits from some experimenting
+            address = new byte[20];
+            RIPEMD160Digest rpmd160 = new RIPEMD160Digest();
+            rpmd160.update(encodedPk, 0, encodedPk.length);
+            rpmd160.doFinal(address, 0);
+            _WALLET_ADDRESSES.put(cacheKey, address);
+        }
+        return address.clone();
+    }
+
+    /**
+     * Returns the counters of the wallet address cache, for reporting.
+     *
+     * @return stats
+     */
+    public static Map<String, Long> getWalletAddressCacheStats() {
+        return _WALLET_ADDRESSES.getStats();
     }
 
     /**
@@ -148,7 +270,35 @@ public class CryptoHasher {
         return 0;
     }
 
+    /**
+     * Returns the merkle root of a list of txns, without changing the list.
+     *
+     * @param txns
+     * @return merkleRoot
+     * @see MerkleTree
+     */
     public static byte[] generateMerkleTree(List<Transaction> txns) throws NoSuchAlgorithmException {
+        return MerkleTree.root(txns);
+    }
+
+    /**
+     * Returns the merkle root of a list of txns as it is built for blocks of the given version,
+     * for checking the merkle root of a block.
+     *
+     * @param txns
+     * @param blockVersion
+     * @return merkleRoot
+     */
+    public static byte[] generateMerkleTree(List<Transaction> txns, int blockVersion) throws NoSuchAlgorithmException {
+        if(blockVersion >= MerkleTree.FIRST_BLOCK_VERSION) {
+            return MerkleTree.root(txns);
+        }
+        return generateLegacyMerkleTree(new ArrayList<>(txns));
+    }
+
+    // Private function building the merkle root of blocks older than MerkleTree.FIRST_BLOCK_VERSION,
+    // kept as it was so those blocks still check out. It leaves some of the txns out of the tree.
+    private static byte[] generateLegacyMerkleTree(List<Transaction> txns) throws NoSuchAlgorithmException {
         if(txns.size()%2 != 0) {
             // duplicate the last item in the list
             // for adding to the merkle tree to ensure
@@ -166,10 +316,7 @@ public class CryptoHasher {
             temp = DataUtil.appendBytes(temp, txns.get(0).getTxnHash());
             return dhash(temp);
         }
-        // pass first 1/2 and second 1/2
-        // need to test to make sure this never has issues
-        // or misses any txns...
-        return dhash(DataUtil.appendBytes(generateMerkleTree(txns.subList(0, (txns.size()/2)-1)), generateMerkleTree(txns.subList((txns.size()/2), txns.size()-1))));
+        return dhash(DataUtil.appendBytes(generateLegacyMerkleTree(txns.subList(0, (txns.size()/2)-1)), generateLegacyMerkleTree(txns.subList((txns.size()/2), txns.size()-1))));
     }
 
 }
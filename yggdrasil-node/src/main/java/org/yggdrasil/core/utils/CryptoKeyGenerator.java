@@ -3,11 +3,13 @@ package org.yggdrasil.core.utils;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.spec.ECGenParameterSpec;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Map;
 
 /**
  * This component serves as the public and private key pair generator
@@ -23,6 +25,20 @@ public class CryptoKeyGenerator {
     private static final String _SECURE_RANDOM_ALGORITHM = "SHA1PRNG";
     private static final String _SIGNATURE_ALGORITHM = "SHA256withECDSA";
     private static final String _EC_SPECIFICATION = "secp256r1";
+    // The number of decoded public keys kept, and their estimated size (in bytes) each
+    private static final int _PUBLIC_KEY_CACHE_ENTRIES = 10000;
+    private static final int _PUBLIC_KEY_BYTES = 512;
+    // Decoded public keys, by their encoding
+    private static final SegmentedLruCache<ByteBuffer, PublicKey> _PUBLIC_KEYS = new SegmentedLruCache<>(
+            _PUBLIC_KEY_CACHE_ENTRIES, (long) _PUBLIC_KEY_CACHE_ENTRIES * _PUBLIC_KEY_BYTES, publicKey -> _PUBLIC_KEY_BYTES);
+    // The key factory of each thread, reused for every key decoded on the thread
+    private static final ThreadLocal<KeyFactory> _KEY_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return KeyFactory.getInstance(_KEY_PAIR_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The " + _KEY_PAIR_ALGORITHM + " key factory is not available.", e);
+        }
+    });
 
     private ECGenParameterSpec keyGenSpecification;
     private KeyPairGenerator keyGenerator;
@@ -60,10 +76,32 @@ public class CryptoKeyGenerator {
         return keyGenerator.generateKeyPair();
     }
 
+    /**
+     * Decodes an X.509 encoded public key. The same keys are decoded over and over (every txn
+     * of an origin carries its key), so decoded keys are cached, and keys that are not cached
+     * are decoded with a key factory kept per thread.
+     *
+     * @param encPublicKey
+     * @return publicKey
+     */
     public static PublicKey readPublicKeyFromBytes(byte[] encPublicKey) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeySpecException {
-        X509EncodedKeySpec pubKeySpec = new X509EncodedKeySpec(encPublicKey);
-        KeyFactory keyFactory = KeyFactory.getInstance(_KEY_PAIR_ALGORITHM);
-        return keyFactory.generatePublic(pubKeySpec);
+        ByteBuffer cacheKey = ByteBuffer.wrap(encPublicKey.clone());
+        PublicKey publicKey = _PUBLIC_KEYS.get(cacheKey);
+        if (publicKey == null) {
+            X509EncodedKeySpec pubKeySpec = new X509EncodedKeySpec(encPublicKey);
+            publicKey = _KEY_FACTORY.get().generatePublic(pubKeySpec);
+            _PUBLIC_KEYS.put(cacheKey, publicKey);
+        }
+        return publicKey;
+    }
+
+    /**
+     * Returns the counters of the decoded public key cache, for reporting.
+     *
+     * @return stats
+     */
+    public static Map<String, Long> getPublicKeyCacheStats() {
+        return _PUBLIC_KEYS.getStats();
     }
 
     public static PrivateKey readPrivateKeyFromBytes(byte[] encPublicKey) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeySpecException {
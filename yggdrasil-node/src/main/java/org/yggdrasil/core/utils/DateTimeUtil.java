@@ -23,6 +23,10 @@ public class DateTimeUtil {
         return ZonedDateTime.ofInstant(Instant.ofEpochSecond(timestamp), ZoneId.of(_ZONE_ID));
     }
 
+    public static ZonedDateTime fromEpochSecond(long epochSecond, int nanos) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nanos), ZoneId.of(_ZONE_ID));
+    }
+
     public static long toEpochSecondTimeStamp(ZonedDateTime timestamp) {
         return timestamp.toEpochSecond();
     }
@@ -0,0 +1,132 @@
+package org.yggdrasil.core.utils;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.yggdrasil.core.ledger.chain.BlockHeader;
+import org.yggdrasil.core.serialization.HashSerializer;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The proof that a txn is in a block: the position of the txn in the block, the number of txns
+ * in the block, and the sibling of each node on the path from the txn up to the merkle root.
+ * A proof is checked by hashing the txn up the path and comparing the result with the merkle
+ * root of the block header, so a txn can be shown to be in a block with about log2(n) hashes
+ * rather than the whole block.
+ *
+ * Only blocks built with the {@link MerkleTree} (version {@link MerkleTree#FIRST_BLOCK_VERSION}
+ * and up) have merkle roots that proofs can be checked against.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class MerkleProof implements Serializable {
+
+    // The txn the proof is for
+    private final byte[] txnHash;
+    // The position of the txn in the block
+    private final int index;
+    // The number of txns in the block
+    private final int leafCount;
+    // The sibling of each node on the path up to the root, from the txn's level up
+    private final byte[][] siblings;
+
+    public MerkleProof(byte[] txnHash, int index, int leafCount, byte[][] siblings) {
+        this.txnHash = txnHash;
+        this.index = index;
+        this.leafCount = leafCount;
+        this.siblings = siblings;
+    }
+
+    @JsonSerialize(using = HashSerializer.class)
+    public byte[] getTxnHash() {
+        return txnHash;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    public String[] getSiblings() {
+        return Arrays.stream(siblings).map(CryptoHasher::humanReadableHash).toArray(String[]::new);
+    }
+
+    public byte[][] getSiblingHashes() {
+        return siblings;
+    }
+
+    /**
+     * Check the proof against the merkle root of a block header.
+     *
+     * @param header
+     * @return isValid
+     */
+    public boolean verify(BlockHeader header) {
+        return header != null && header.getVersion() >= MerkleTree.FIRST_BLOCK_VERSION
+                && verify(this.txnHash, this.index, this.leafCount, this.siblings, header.getMerkleRoot());
+    }
+
+    /**
+     * Check the proof against a merkle root.
+     *
+     * @param merkleRoot
+     * @return isValid
+     */
+    public boolean verify(byte[] merkleRoot) {
+        return verify(this.txnHash, this.index, this.leafCount, this.siblings, merkleRoot);
+    }
+
+    /**
+     * Check that hashing a txn up a path of siblings gives a merkle root. The path has to have
+     * exactly one sibling per level of a tree of the given number of txns, and where a node is
+     * the last of a level with an odd number of nodes its sibling has to be the node itself.
+     * The root does not commit to the number of txns, so a proof shows the txn is in the block
+     * but not how many txns the block holds.
+     *
+     * @param txnHash
+     * @param index
+     * @param leafCount
+     * @param siblings
+     * @param merkleRoot
+     * @return isValid
+     */
+    public static boolean verify(byte[] txnHash, int index, int leafCount, byte[][] siblings, byte[] merkleRoot) {
+        if (txnHash == null || txnHash.length != CryptoHasher.HASH_LENGTH || siblings == null || merkleRoot == null
+                || leafCount <= 0 || index < 0 || index >= leafCount) {
+            return false;
+        }
+        byte[] pair = new byte[2 * CryptoHasher.HASH_LENGTH];
+        byte[] node = txnHash.clone();
+        int position = index;
+        int width = leafCount;
+        int level = 0;
+        do {
+            if (level >= siblings.length || siblings[level] == null || siblings[level].length != CryptoHasher.HASH_LENGTH) {
+                return false;
+            }
+            byte[] sibling = siblings[level];
+            if ((position ^ 1) >= width && !Arrays.equals(sibling, node)) {
+                return false;
+            }
+            boolean left = (position & 1) == 0;
+            System.arraycopy(left ? node : sibling, 0, pair, 0, CryptoHasher.HASH_LENGTH);
+            System.arraycopy(left ? sibling : node, 0, pair, CryptoHasher.HASH_LENGTH, CryptoHasher.HASH_LENGTH);
+            CryptoHasher.dhash(pair, 0, pair.length, node, 0);
+            position >>>= 1;
+            width = (width + 1) / 2;
+            level++;
+        } while (width > 1);
+        return level == siblings.length && Arrays.equals(node, merkleRoot);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MerkleProof(txn=%s, index=%d, txns=%d, depth=%d)",
+                CryptoHasher.humanReadableHash(txnHash), index, leafCount, siblings.length);
+    }
+
+}
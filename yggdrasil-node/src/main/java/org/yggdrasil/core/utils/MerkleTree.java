@@ -0,0 +1,249 @@
+package org.yggdrasil.core.utils;
+
+import org.yggdrasil.core.ledger.transaction.Transaction;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The merkle tree of the txns of a block, built level by level from the txn hashes up to the
+ * root. Each node is the double hash of its two children; a level with an odd number of nodes
+ * pairs its last node with itself, and a tree of a single txn hashes the txn with itself.
+ * Since the last node is paired with itself, a list of txns and the same list with its last
+ * txns repeated have the same root, so a block must not hold the same txn twice
+ * ({@link #hasDuplicateTxns(List)}) for its root to stand for its txns.
+ *
+ * Each level is kept as one array of hashes, and a pair of nodes is hashed straight from the
+ * array of its level into the array of the next, so building the tree only allocates one array
+ * per level. Wide levels are split across the fork/join pool. The tree can keep every level
+ * for building proofs ({@link #getProof(int)}), or only the root.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class MerkleTree {
+
+    // The first block version whose merkle root is built with this tree. Blocks of older versions
+    // were built with a tree that left some of the txns out, and are checked against that tree.
+    public static final int FIRST_BLOCK_VERSION = 0x000011;
+    // The number of pairs of a level hashed on the calling thread, wider levels are split across the pool
+    private static final int _PARALLEL_PAIRS = 256;
+
+    // The levels of the tree from the txn hashes up, or only the root when the levels are not kept
+    private final List<byte[]> levels;
+    // The number of txns in the tree
+    private final int leafCount;
+
+    private MerkleTree(List<byte[]> levels, int leafCount) {
+        this.levels = levels;
+        this.leafCount = leafCount;
+    }
+
+    /**
+     * Build the merkle tree of a list of txns, without changing the list.
+     *
+     * @param txns
+     * @param retainLevels whether to keep every level of the tree, or only the root
+     * @return tree
+     */
+    public static MerkleTree build(List<Transaction> txns, boolean retainLevels) {
+        if (txns == null || txns.isEmpty()) {
+            throw new IllegalArgumentException("A merkle tree needs at least one txn.");
+        }
+        byte[] leaves = new byte[txns.size() * CryptoHasher.HASH_LENGTH];
+        for (int i = 0; i < txns.size(); i++) {
+            byte[] txnHash = txns.get(i).getTxnHash();
+            if (txnHash == null || txnHash.length != CryptoHasher.HASH_LENGTH) {
+                throw new IllegalArgumentException("Txn " + i + " does not have a valid hash.");
+            }
+            System.arraycopy(txnHash, 0, leaves, i * CryptoHasher.HASH_LENGTH, CryptoHasher.HASH_LENGTH);
+        }
+        List<byte[]> levels = new ArrayList<>();
+        byte[] level = leaves;
+        if (retainLevels) {
+            levels.add(level);
+        }
+        // A single txn is still hashed once, with itself
+        do {
+            level = nextLevel(level);
+            if (retainLevels) {
+                levels.add(level);
+            }
+        } while (level.length > CryptoHasher.HASH_LENGTH);
+        return new MerkleTree(retainLevels ? levels : Collections.singletonList(level), txns.size());
+    }
+
+    /**
+     * Returns the merkle root of a list of txns, without changing the list.
+     *
+     * @param txns
+     * @return root
+     */
+    public static byte[] root(List<Transaction> txns) {
+        return build(txns, false).getRoot();
+    }
+
+    /**
+     * Returns whether a list of txns holds the same txn more than once. A block whose txns do
+     * this is invalid, even when its merkle root matches.
+     *
+     * @param txns
+     * @return hasDuplicates
+     */
+    public static boolean hasDuplicateTxns(List<Transaction> txns) {
+        Set<ByteBuffer> txnHashes = new HashSet<>();
+        for (Transaction txn : txns) {
+            if (txn.getTxnHash() != null && !txnHashes.add(ByteBuffer.wrap(txn.getTxnHash()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public byte[] getRoot() {
+        return this.levels.get(this.levels.size() - 1).clone();
+    }
+
+    public int getLeafCount() {
+        return this.leafCount;
+    }
+
+    /**
+     * Returns whether every level of the tree was kept.
+     *
+     * @return retainsLevels
+     */
+    public boolean retainsLevels() {
+        return this.levels.size() > 1;
+    }
+
+    /**
+     * Returns the number of levels kept, the txn hashes and the root included.
+     *
+     * @return levelCount
+     */
+    public int getLevelCount() {
+        return this.levels.size();
+    }
+
+    /**
+     * Returns the number of nodes in a level, 0 being the txn hashes.
+     *
+     * @param level
+     * @return width
+     */
+    public int getLevelWidth(int level) {
+        return this.levels.get(level).length / CryptoHasher.HASH_LENGTH;
+    }
+
+    /**
+     * Returns a node of a kept level, 0 being the txn hashes.
+     *
+     * @param level
+     * @param index
+     * @return hash
+     */
+    public byte[] getNode(int level, int index) {
+        byte[] nodes = this.levels.get(level);
+        int offset = index * CryptoHasher.HASH_LENGTH;
+        if (index < 0 || offset >= nodes.length) {
+            throw new IndexOutOfBoundsException("Level " + level + " has no node " + index + ".");
+        }
+        return Arrays.copyOfRange(nodes, offset, offset + CryptoHasher.HASH_LENGTH);
+    }
+
+    /**
+     * Returns the proof that the txn at a position is in the tree. Only available when every
+     * level of the tree was kept.
+     *
+     * @param index
+     * @return proof
+     */
+    public MerkleProof getProof(int index) {
+        if (!this.retainsLevels()) {
+            throw new IllegalStateException("The levels of the tree were not kept, build it with retainLevels to make proofs.");
+        }
+        if (index < 0 || index >= this.leafCount) {
+            throw new IndexOutOfBoundsException("The tree has no txn " + index + ".");
+        }
+        byte[][] siblings = new byte[this.levels.size() - 1][];
+        int position = index;
+        for (int level = 0; level < siblings.length; level++) {
+            int sibling = (position ^ 1) < this.getLevelWidth(level) ? position ^ 1 : position;
+            siblings[level] = this.getNode(level, sibling);
+            position >>>= 1;
+        }
+        return new MerkleProof(this.getNode(0, index), index, this.leafCount, siblings);
+    }
+
+    // Private function to hash the pairs of a level into the level above it
+    private static byte[] nextLevel(byte[] level) {
+        int width = level.length / CryptoHasher.HASH_LENGTH;
+        int pairs = (width + 1) / 2;
+        byte[] next = new byte[pairs * CryptoHasher.HASH_LENGTH];
+        if (pairs > _PARALLEL_PAIRS && Runtime.getRuntime().availableProcessors() > 1) {
+            ForkJoinPool.commonPool().invoke(new HashPairs(level, next, 0, pairs));
+        } else {
+            hashPairs(level, next, 0, pairs);
+        }
+        return next;
+    }
+
+    // Private function to hash a range of the pairs of a level. The two nodes of a pair are next
+    // to each other in the level, so they are hashed in place; only a last node without a pair is
+    // copied next to itself in a scratch buffer.
+    private static void hashPairs(byte[] level, byte[] next, int fromPair, int toPair) {
+        int width = level.length / CryptoHasher.HASH_LENGTH;
+        for (int pair = fromPair; pair < toPair; pair++) {
+            int left = pair * 2 * CryptoHasher.HASH_LENGTH;
+            int out = pair * CryptoHasher.HASH_LENGTH;
+            if (pair * 2 + 1 < width) {
+                CryptoHasher.dhash(level, left, 2 * CryptoHasher.HASH_LENGTH, next, out);
+            } else {
+                byte[] scratch = new byte[2 * CryptoHasher.HASH_LENGTH];
+                System.arraycopy(level, left, scratch, 0, CryptoHasher.HASH_LENGTH);
+                System.arraycopy(level, left, scratch, CryptoHasher.HASH_LENGTH, CryptoHasher.HASH_LENGTH);
+                CryptoHasher.dhash(scratch, 0, scratch.length, next, out);
+            }
+        }
+    }
+
+    /**
+     * Hashes a range of the pairs of a level, splitting it in half until the range is narrow
+     * enough to hash on one thread.
+     */
+    private static final class HashPairs extends RecursiveAction {
+
+        private final byte[] level;
+        private final byte[] next;
+        private final int fromPair;
+        private final int toPair;
+
+        private HashPairs(byte[] level, byte[] next, int fromPair, int toPair) {
+            this.level = level;
+            this.next = next;
+            this.fromPair = fromPair;
+            this.toPair = toPair;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.toPair - this.fromPair <= _PARALLEL_PAIRS) {
+                hashPairs(this.level, this.next, this.fromPair, this.toPair);
+                return;
+            }
+            int middle = (this.fromPair + this.toPair) >>> 1;
+            invokeAll(new HashPairs(this.level, this.next, this.fromPair, middle),
+                    new HashPairs(this.level, this.next, middle, this.toPair));
+        }
+
+    }
+
+}
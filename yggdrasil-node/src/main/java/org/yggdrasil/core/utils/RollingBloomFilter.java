@@ -0,0 +1,171 @@
+package org.yggdrasil.core.utils;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bloom filter of the most recently inserted items, used for answering "definitely not seen"
+ * without looking anything up. The filter is split into two generations; once the current
+ * generation has taken half of the capacity it becomes the previous generation and the one
+ * before it is dropped. Items are remembered for at least the last half of the capacity of
+ * insertions, and at most the full capacity.
+ *
+ * A query that finds an item may be a false positive, at about the configured rate, so a
+ * positive answer still has to be checked against the real data. The hash functions are keyed
+ * with random values per filter, so peers cannot pick hashes that collide on purpose.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class RollingBloomFilter {
+
+    // The number of insertions that fill a generation
+    private final int generationSize;
+    // The number of bits in each generation
+    private final int bits;
+    // The number of hash functions
+    private final int hashFunctions;
+    private final long tweak0;
+    private final long tweak1;
+    private long[] current;
+    private long[] previous;
+    private int currentCount;
+    private long insertions;
+    private long queries;
+    private long negatives;
+    private final Object lock = new Object();
+
+    /**
+     * Create a filter that remembers at least half of the capacity of the most recent insertions,
+     * with the given false positive rate.
+     *
+     * @param capacity
+     * @param falsePositiveRate
+     */
+    public RollingBloomFilter(int capacity, double falsePositiveRate) {
+        this.generationSize = Math.max(capacity / 2, 1);
+        // Both generations are queried, so each is sized for half of the false positive rate
+        double generationRate = Math.min(Math.max(falsePositiveRate / 2, 1e-12), 0.5);
+        double bitsPerItem = -Math.log(generationRate) / (Math.log(2) * Math.log(2));
+        this.bits = (int) Math.min(Math.max(Math.ceil(this.generationSize * bitsPerItem), 64), Integer.MAX_VALUE - 64);
+        this.hashFunctions = Math.max(1, (int) Math.round(bitsPerItem * Math.log(2)));
+        SecureRandom random = new SecureRandom();
+        this.tweak0 = random.nextLong();
+        this.tweak1 = random.nextLong();
+        this.current = new long[(this.bits + 63) / 64];
+        this.previous = new long[(this.bits + 63) / 64];
+    }
+
+    /**
+     * Insert an item, rolling over to a new generation when the current one is full. Items
+     * inserted two generations ago are forgotten on a roll over, so callers that need some
+     * items to stay in the filter have to insert them again when this returns true.
+     *
+     * @param item
+     * @return whether the filter rolled over to a new generation
+     */
+    public boolean insert(byte[] item) {
+        long h0 = hash(item, this.tweak0);
+        long h1 = hash(item, this.tweak1) | 1;
+        synchronized (lock) {
+            boolean rolled = false;
+            if (this.currentCount >= this.generationSize) {
+                long[] cleared = this.previous;
+                Arrays.fill(cleared, 0L);
+                this.previous = this.current;
+                this.current = cleared;
+                this.currentCount = 0;
+                rolled = true;
+            }
+            for (int i = 0; i < this.hashFunctions; i++) {
+                int bit = (int) Math.floorMod(h0 + i * h1, (long) this.bits);
+                this.current[bit >>> 6] |= 1L << bit;
+            }
+            this.currentCount++;
+            this.insertions++;
+            return rolled;
+        }
+    }
+
+    /**
+     * Returns false if the item has definitely not been inserted recently, and true if it
+     * might have been.
+     *
+     * @param item
+     * @return mightContain
+     */
+    public boolean mightContain(byte[] item) {
+        long h0 = hash(item, this.tweak0);
+        long h1 = hash(item, this.tweak1) | 1;
+        synchronized (lock) {
+            this.queries++;
+            if (contains(this.current, h0, h1) || contains(this.previous, h0, h1)) {
+                return true;
+            }
+            this.negatives++;
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of insertions that fill a generation, which is the most items that can
+     * be inserted right after a roll over without the filter rolling over again.
+     *
+     * @return generationSize
+     */
+    public int getGenerationSize() {
+        return this.generationSize;
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            Arrays.fill(this.current, 0L);
+            Arrays.fill(this.previous, 0L);
+            this.currentCount = 0;
+        }
+    }
+
+    /**
+     * Returns the filter counters, for reporting.
+     *
+     * @return stats
+     */
+    public Map<String, Long> getStats() {
+        synchronized (lock) {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("insertions", this.insertions);
+            stats.put("queries", this.queries);
+            stats.put("negatives", this.negatives);
+            stats.put("bits", 2L * this.bits);
+            stats.put("hashFunctions", (long) this.hashFunctions);
+            return stats;
+        }
+    }
+
+    private boolean contains(long[] generation, long h0, long h1) {
+        for (int i = 0; i < this.hashFunctions; i++) {
+            int bit = (int) Math.floorMod(h0 + i * h1, (long) this.bits);
+            if ((generation[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Keyed 64-bit hash of the item (FNV-1a over the bytes, finished with the SplitMix64 mixer)
+    private static long hash(byte[] item, long tweak) {
+        long h = 0xcbf29ce484222325L ^ tweak;
+        for (byte b : item) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 30;
+        h *= 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 27;
+        h *= 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+}
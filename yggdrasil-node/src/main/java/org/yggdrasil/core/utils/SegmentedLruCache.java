@@ -0,0 +1,218 @@
+package org.yggdrasil.core.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A segmented LRU cache bounded by both the number of entries and their estimated size
+ * in bytes. New entries are placed in a probationary segment and are only promoted to the
+ * protected segment when they are read again, so a burst of entries that are used once
+ * (such as blocks arriving during a sync) cannot push out the entries that are used often.
+ * Entries are evicted from the probationary segment first.
+ *
+ * Hits, misses and evictions are counted for reporting, along with the hit rate.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+public class SegmentedLruCache<K, V> {
+
+    // The share of the cache that the protected segment may hold, in percent
+    private static final int _PROTECTED_SHARE = 80;
+
+    private final long maxEntries;
+    private final long maxBytes;
+    // Estimates the size in bytes of a cached value
+    private final ToLongFunction<V> weigher;
+    // Entries seen once, in insertion order
+    private final LinkedHashMap<K, Entry<V>> probation;
+    // Entries seen more than once, in access order
+    private final LinkedHashMap<K, Entry<V>> protectedSegment;
+    private long probationBytes;
+    private long protectedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private final Object lock = new Object();
+
+    public SegmentedLruCache(long maxEntries, long maxBytes, ToLongFunction<V> weigher) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+        this.probation = new LinkedHashMap<>(16, 0.75f, false);
+        this.protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Get a value from the cache, promoting it to the protected segment if it was
+     * on probation.
+     *
+     * @param key
+     * @return value or null
+     */
+    public V get(K key) {
+        synchronized (lock) {
+            Entry<V> entry = this.protectedSegment.get(key);
+            if (entry != null) {
+                this.hits++;
+                return entry.value;
+            }
+            entry = this.probation.remove(key);
+            if (entry == null) {
+                this.misses++;
+                return null;
+            }
+            this.hits++;
+            this.probationBytes -= entry.weight;
+            this.protectedSegment.put(key, entry);
+            this.protectedBytes += entry.weight;
+            this.demoteProtected();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Put a value into the cache, evicting the least recently used entries if the
+     * cache has grown past its bounds.
+     *
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value) {
+        Entry<V> entry = new Entry<>(value, this.weigher.applyAsLong(value));
+        synchronized (lock) {
+            Entry<V> previous = this.protectedSegment.get(key);
+            if (previous != null) {
+                this.protectedSegment.put(key, entry);
+                this.protectedBytes += entry.weight - previous.weight;
+                this.demoteProtected();
+            } else {
+                previous = this.probation.put(key, entry);
+                this.probationBytes += entry.weight - (previous == null ? 0 : previous.weight);
+            }
+            this.evict();
+        }
+    }
+
+    /**
+     * Remove a value from the cache.
+     *
+     * @param key
+     */
+    public void remove(K key) {
+        synchronized (lock) {
+            Entry<V> entry = this.probation.remove(key);
+            if (entry != null) {
+                this.probationBytes -= entry.weight;
+            }
+            entry = this.protectedSegment.remove(key);
+            if (entry != null) {
+                this.protectedBytes -= entry.weight;
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            this.probation.clear();
+            this.protectedSegment.clear();
+            this.probationBytes = 0;
+            this.protectedBytes = 0;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the values currently in the cache.
+     *
+     * @return values
+     */
+    public List<V> values() {
+        synchronized (lock) {
+            List<V> values = new ArrayList<>(this.probation.size() + this.protectedSegment.size());
+            this.probation.values().forEach(entry -> values.add(entry.value));
+            this.protectedSegment.values().forEach(entry -> values.add(entry.value));
+            return values;
+        }
+    }
+
+    public long size() {
+        synchronized (lock) {
+            return this.probation.size() + this.protectedSegment.size();
+        }
+    }
+
+    public long weightedSize() {
+        synchronized (lock) {
+            return this.probationBytes + this.protectedBytes;
+        }
+    }
+
+    /**
+     * Returns the cache counters, for reporting.
+     *
+     * @return stats
+     */
+    public Map<String, Long> getStats() {
+        synchronized (lock) {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("hits", this.hits);
+            stats.put("misses", this.misses);
+            stats.put("hitRatePercent", this.hits + this.misses == 0 ? 0 : this.hits * 100 / (this.hits + this.misses));
+            stats.put("evictions", this.evictions);
+            stats.put("entries", (long) (this.probation.size() + this.protectedSegment.size()));
+            stats.put("bytes", this.probationBytes + this.protectedBytes);
+            stats.put("maxEntries", this.maxEntries);
+            stats.put("maxBytes", this.maxBytes);
+            return stats;
+        }
+    }
+
+    // Move the least recently used protected entries back on probation once the
+    // protected segment holds more than its share of the cache.
+    private void demoteProtected() {
+        Iterator<Map.Entry<K, Entry<V>>> lru = this.protectedSegment.entrySet().iterator();
+        while (lru.hasNext() && (this.protectedSegment.size() * 100L > this.maxEntries * _PROTECTED_SHARE
+                || this.protectedBytes * 100 > this.maxBytes * _PROTECTED_SHARE)) {
+            Map.Entry<K, Entry<V>> demoted = lru.next();
+            lru.remove();
+            this.protectedBytes -= demoted.getValue().weight;
+            this.probation.put(demoted.getKey(), demoted.getValue());
+            this.probationBytes += demoted.getValue().weight;
+        }
+    }
+
+    // Evict entries, oldest probationary entries first, until the cache is within its bounds.
+    private void evict() {
+        while (this.probation.size() + this.protectedSegment.size() > this.maxEntries
+                || this.probationBytes + this.protectedBytes > this.maxBytes) {
+            LinkedHashMap<K, Entry<V>> segment = this.probation.isEmpty() ? this.protectedSegment : this.probation;
+            Iterator<Map.Entry<K, Entry<V>>> lru = segment.entrySet().iterator();
+            if (!lru.hasNext()) {
+                return;
+            }
+            Entry<V> evicted = lru.next().getValue();
+            lru.remove();
+            if (segment == this.probation) {
+                this.probationBytes -= evicted.weight;
+            } else {
+                this.protectedBytes -= evicted.weight;
+            }
+            this.evictions++;
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long weight;
+
+        private Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+}
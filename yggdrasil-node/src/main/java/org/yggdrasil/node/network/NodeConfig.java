@@ -52,10 +52,11 @@ public class NodeConfig {
     @Value("${blockchain.p2p.connection-timeout: 30000}")
     private Integer connectionTimeout;
 
-    // Types: full, archival, relay
+    // Types: full, archival, relay, pruned
     // full = all services available
     // archival = only store new blocks
     // relay = only relay new information, do not store anything
+    // pruned = all services available, but only the most recent block bodies are kept
     // TODO: Implement this switch, with logic to have only a specific ratio of relay to full or archival nodes
     @Value("${blockchain.client.mode: full}")
     private String mode;
@@ -136,4 +137,8 @@ public class NodeConfig {
     public String getMode() {
         return mode;
     }
+
+    public boolean isPruned() {
+        return "pruned".equalsIgnoreCase(mode.trim());
+    }
 }
@@ -114,6 +114,7 @@ public class Messenger {
                 case REQUEST_BLOCK_HEADER:
                 case REQUEST_BLOCK:
                 case REQUEST_BLOCK_TXNS:
+                case REQUEST_MERKLE_PROOF:
                     handle.handleMessagePayload(message.getPayload(), nodeConnection);
                     messagePayload = AcknowledgeMessage.Builder.builder()
                             .setAcknowledgeChecksum(message.getChecksum())
@@ -215,6 +216,18 @@ public class Messenger {
                             .setChecksum(CryptoHasher.hash(messagePayload))
                             .build();
                     break;
+                case MERKLE_PROOF_PAYLOAD:
+                    handle.handleMessagePayload((MerkleProofPayload) message.getPayload(), nodeConnection);
+                    messagePayload = AcknowledgeMessage.Builder.builder()
+                            .setAcknowledgeChecksum(message.getChecksum())
+                            .build();
+                    returnMessage = Message.Builder.builder()
+                            .setNetwork(message.getNetwork())
+                            .setRequestType(CommandType.ACKNOWLEDGE_PAYLOAD)
+                            .setMessagePayload(messagePayload)
+                            .setChecksum(CryptoHasher.hash(messagePayload))
+                            .build();
+                    break;
                 case PREFILLED_TXN_PAYLOAD:
                     // Not used.
                     break;
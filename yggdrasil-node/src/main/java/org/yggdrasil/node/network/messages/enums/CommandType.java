@@ -21,6 +21,7 @@ public enum CommandType {
     // specific node.
     REQUEST_MEMPOOL_LATEST("GMEMPOOLLATEST", "GET_MEMPOOL_LATEST"),
     REQUEST_ADDRESS("GADDRESS", "GET_ADDRESS"),
+    REQUEST_MERKLE_PROOF("GMRKLPRF", "GET_MERKLE_PROOF"),
 
     // Response (Payload) Types
     ACKNOWLEDGE_PAYLOAD("VRKPYLD", "ACKNOWLEDGE_PAYLOAD"),
@@ -30,6 +31,7 @@ public enum CommandType {
     BLOCK_TXN_PAYLOAD("BLKTXNPYLD", "BLOCK_TXN_PAYLOAD"),
     INVENTORY_PAYLOAD("INVTPYLD", "INVENTORY_PAYLOAD"),
     MEMPOOL_TXN_PAYLOAD("MPLTXNPYLD", "MEMPOOL_TXN_PAYLOAD"),
+    MERKLE_PROOF_PAYLOAD("MRKLPRFPYLD", "MERKLE_PROOF_PAYLOAD"),
     PREFILLED_TXN_PAYLOAD("PFTXNPYLD", "PRFLL_TXN_PAYLOAD"),
     TRANSACTION_PAYLOAD("TXNPYLD", "TRANSACTION_PAYLOAD"),
     TXN_WITNESS_PAYLOAD("TXNWTNSSPYLD", "TXN_WITNESS_PAYLOAD"),
@@ -47,11 +49,11 @@ public enum CommandType {
     private static final CommandType[] values = new CommandType[]{
             // Request types
             REQUEST_BLOCK_HEADER,REQUEST_BLOCK,REQUEST_BLOCK_TXNS,REQUEST_MEMPOOL_TXNS,
-            REQUEST_MEMPOOL_LATEST, REQUEST_ADDRESS,
+            REQUEST_MEMPOOL_LATEST, REQUEST_ADDRESS, REQUEST_MERKLE_PROOF,
             // Response (Payload) Types
             ACKNOWLEDGE_PAYLOAD, ADDRESS_PAYLOAD, BLOCK_HEADER_PAYLOAD, BLOCK_PAYLOAD,
             BLOCK_TXN_PAYLOAD, PREFILLED_TXN_PAYLOAD, TRANSACTION_PAYLOAD, TXN_WITNESS_PAYLOAD,
-            INVENTORY_PAYLOAD,
+            INVENTORY_PAYLOAD, MERKLE_PROOF_PAYLOAD,
             // Error Types
             NOT_FOUND_PAYLOAD, REJECT_PAYLOAD,
             // Utility Types
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.yggdrasil.core.ledger.chain.Block;
+import org.yggdrasil.core.ledger.chain.BlockIndexNode;
 import org.yggdrasil.core.ledger.chain.Blockchain;
 import org.yggdrasil.core.utils.CryptoHasher;
 import org.yggdrasil.node.network.NodeConfig;
@@ -72,35 +73,26 @@ public class BlockHeaderRequestHandler implements MessageHandler<BlockHeaderMess
             }
         }
         if(last != null) {
-            do {
-                block = blockchain.getBlock(block.get().getHeader().getPreviousBlockHash());
-                if(block.isPresent()) {
-                    if(!block.get().compareBlockHash(blockHeaderRequest.getStopHash())) {
-                        headers.add(BlockHeaderPayload.Builder.builder()
-                                .setVersion(block.get().getHeader().getVersion())
-                                .setPreviousHash(block.get().getHeader().getPreviousBlockHash())
-                                .setMerkleRoot(block.get().getHeader().getMerkleRoot())
-                                .setTimestamp((int) block.get().getHeader().getEpochTime())
-                                .setDiff(block.get().getHeader().getDiff())
-                                .setNonce(block.get().getHeader().getNonce())
-                                .setTxnCount(block.get().getTxnCount())
-                                .build());
-                    } else {
-                        headers.add(BlockHeaderPayload.Builder.builder()
-                                .setVersion(block.get().getHeader().getVersion())
-                                .setPreviousHash(block.get().getHeader().getPreviousBlockHash())
-                                .setMerkleRoot(block.get().getHeader().getMerkleRoot())
-                                .setTimestamp((int) block.get().getHeader().getEpochTime())
-                                .setDiff(block.get().getHeader().getDiff())
-                                .setNonce(block.get().getHeader().getNonce())
-                                .setTxnCount(block.get().getTxnCount())
-                                .build());
-                        break;
-                    }
-                } else {
+            // Walk back along the branch of the last known block until the stop hash is found
+            BlockIndexNode node = blockchain.getBlockIndex().getNode(last.get().getBlockHash());
+            for (node = node == null ? null : node.getParent(); node != null && headers.size() < 2500; node = node.getParent()) {
+                block = blockchain.readBlock(node.getBlockHash());
+                if(block.isEmpty()) {
                     break;
                 }
-            } while (headers.size() < 2500);
+                headers.add(BlockHeaderPayload.Builder.builder()
+                        .setVersion(block.get().getHeader().getVersion())
+                        .setPreviousHash(block.get().getHeader().getPreviousBlockHash())
+                        .setMerkleRoot(block.get().getHeader().getMerkleRoot())
+                        .setTimestamp((int) block.get().getHeader().getEpochTime())
+                        .setDiff(block.get().getHeader().getDiff())
+                        .setNonce(block.get().getHeader().getNonce())
+                        .setTxnCount(block.get().getTxnCount())
+                        .build());
+                if(block.get().compareBlockHash(blockHeaderRequest.getStopHash())) {
+                    break;
+                }
+            }
         }
         messagePayload = BlockHeaderResponsePayload.Builder.builder()
                 .setHeaders(headers.toArray(BlockHeaderPayload[]::new))
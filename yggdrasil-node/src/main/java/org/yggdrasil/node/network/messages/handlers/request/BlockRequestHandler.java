@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.yggdrasil.core.ledger.chain.Block;
+import org.yggdrasil.core.ledger.chain.BlockIndexNode;
 import org.yggdrasil.core.ledger.chain.Blockchain;
 import org.yggdrasil.core.ledger.Mempool;
 import org.yggdrasil.core.ledger.transaction.Transaction;
@@ -75,25 +76,20 @@ public class BlockRequestHandler implements MessageHandler<BlockMessageRequest>
             }
         }
         if(last != null) {
-            do {
-                block = blockchain.getBlock(block.get().getHeader().getPreviousBlockHash());
-                if(block.isPresent()){
-                    if(!block.get().compareBlockHash(blockMessageRequest.getStopHash())){
-                        invs.add(InventoryVector.Builder.builder()
-                                        .setHash(block.get().getBlockHash())
-                                        .setType(InventoryType.MSG_BLOCK)
-                                .build());
-                    } else {
-                        invs.add(InventoryVector.Builder.builder()
-                                .setHash(block.get().getBlockHash())
-                                .setType(InventoryType.MSG_BLOCK)
-                                .build());
-                        break;
-                    }
-                } else {
+            // Walk back along the branch of the last known block until the stop hash is found
+            BlockIndexNode node = blockchain.getBlockIndex().getNode(last.get().getBlockHash());
+            for (node = node == null ? null : node.getParent(); node != null && invs.size() < 500; node = node.getParent()) {
+                if(!blockchain.hasBlock(node.getBlockHash())) {
                     break;
                 }
-            } while (invs.size() < 500);
+                invs.add(InventoryVector.Builder.builder()
+                        .setHash(node.getBlockHash())
+                        .setType(InventoryType.MSG_BLOCK)
+                        .build());
+                if(CryptoHasher.isEqualHashes(node.getBlockHash(), blockMessageRequest.getStopHash())){
+                    break;
+                }
+            }
         }
 
         messagePayload = InventoryMessage.Builder.builder()
@@ -14,8 +14,11 @@ import org.yggdrasil.node.network.messages.Message;
 import org.yggdrasil.node.network.messages.MessagePayload;
 import org.yggdrasil.node.network.messages.Messenger;
 import org.yggdrasil.node.network.messages.enums.CommandType;
+import org.yggdrasil.node.network.messages.enums.InventoryType;
 import org.yggdrasil.node.network.messages.handlers.MessageHandler;
 import org.yggdrasil.node.network.messages.payloads.BlockTransactions;
+import org.yggdrasil.node.network.messages.payloads.InventoryVector;
+import org.yggdrasil.node.network.messages.payloads.NotFoundResponsePayload;
 import org.yggdrasil.node.network.messages.payloads.TransactionPayload;
 import org.yggdrasil.node.network.messages.requests.BlockTransactionsRequest;
 import org.yggdrasil.node.network.runners.NodeConnection;
@@ -49,7 +52,24 @@ public class BlockTxnRequestHandler implements MessageHandler<BlockTransactionsR
         }
 
         Optional<Block> block = blockchain.getBlock(blockTxnRequest.getHash());
-        if(block.isPresent()) {
+        if(block.isPresent() && blockchain.isBodyPruned(block.get())) {
+            // The txns of this block were pruned, only the header is kept
+            messagePayload = NotFoundResponsePayload.Builder.builder()
+                    .setMissingItems(new InventoryVector[]{InventoryVector.Builder.builder()
+                            .setType(InventoryType.MSG_BLOCK)
+                            .setHash(blockTxnRequest.getHash())
+                            .build()})
+                    .setChecksum(CryptoHasher.hash(blockTxnRequest))
+                    .build();
+            message = Message.Builder.builder()
+                    .setNetwork(nodeConfig.getNetwork())
+                    .setRequestType(CommandType.NOT_FOUND_PAYLOAD)
+                    .setMessagePayload(messagePayload)
+                    .setChecksum(CryptoHasher.hash(messagePayload))
+                    .build();
+            logger.info("Sending message with checksum: {}", CryptoHasher.humanReadableHash(message.getChecksum()));
+            messenger.sendTargetMessage(message, nodeConnection);
+        } else if(block.isPresent()) {
             List<Transaction> txns = block.get().getData();
 
             if(blockTxnRequest.getIndexesCount() > txns.size()) {
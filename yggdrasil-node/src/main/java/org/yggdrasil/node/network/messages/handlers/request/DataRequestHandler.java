@@ -48,6 +48,7 @@ public class DataRequestHandler implements MessageHandler<DataMessageRequest> {
 
         List<TransactionPayload> mempoolTxns = null;
         List<BlockHeaderPayload> blockHeaders = null;
+        List<InventoryVector> notFound = null;
 
         if(dataMessageRequest.getRequestCount() == dataMessageRequest.getRequestedData().length) {
             for(InventoryVector v : dataMessageRequest.getRequestedData()) {
@@ -55,8 +56,13 @@ public class DataRequestHandler implements MessageHandler<DataMessageRequest> {
                     case ERROR:
                         break;
                     case MSG_TX:
+                        Transaction mTxn = mempool.mightContain(v.getHash()) ? mempool.peekTransaction(v.getHash()) : null;
+                        if (mTxn == null) {
+                            if(notFound == null) notFound = new ArrayList<>();
+                            notFound.add(v);
+                            break;
+                        }
                         if(mempoolTxns == null) mempoolTxns = new ArrayList<>();
-                        Transaction mTxn = mempool.peekTransaction(v.getHash());
                         mempoolTxns.add(TransactionPayload.Builder.builder()
                                         .setVersion(Blockchain._VERSION)
                                         //.setWitnessFlag(mTxn.isWitness())
@@ -68,9 +74,19 @@ public class DataRequestHandler implements MessageHandler<DataMessageRequest> {
                         break;
                     case MSG_BLOCK:
                         if(blockHeaders == null) blockHeaders = new ArrayList<>();
+                        // Blocks that are not stored are answered from the block index, without a storage read
+                        if (!blockchain.hasBlock(v.getHash())) {
+                            if(notFound == null) notFound = new ArrayList<>();
+                            notFound.add(v);
+                            break;
+                        }
                         Optional<Block> block = blockchain.getBlock(v.getHash());
-                        if (block.isPresent()) blockHeaders.add(BlockHeaderPayload.Builder.builder()
-                                        .setVersion(Blockchain._VERSION)
+                        // Blocks that were pruned down to their header can no longer be served
+                        if (block.isPresent() && blockchain.isBodyPruned(block.get())) {
+                            if(notFound == null) notFound = new ArrayList<>();
+                            notFound.add(v);
+                        } else if (block.isPresent()) blockHeaders.add(BlockHeaderPayload.Builder.builder()
+                                        .setVersion(block.get().getHeader().getVersion())
                                         .setPreviousHash(block.get().getHeader().getPreviousBlockHash())
                                         .setMerkleRoot(block.get().getHeader().getMerkleRoot())
                                         .setTimestamp((int) block.get().getHeader().getEpochTime())
@@ -121,5 +137,20 @@ public class DataRequestHandler implements MessageHandler<DataMessageRequest> {
             logger.info("Sending message with checksum: {}", CryptoHasher.humanReadableHash(message.getChecksum()));
             messenger.sendTargetMessage(message, nodeConnection);
         }
+
+        if(notFound != null && notFound.size() > 0) {
+            messagePayload = NotFoundResponsePayload.Builder.builder()
+                    .setMissingItems(notFound.toArray(InventoryVector[]::new))
+                    .setChecksum(CryptoHasher.hash(dataMessageRequest))
+                    .build();
+            message = Message.Builder.builder()
+                    .setNetwork(nodeConfig.getNetwork())
+                    .setRequestType(CommandType.NOT_FOUND_PAYLOAD)
+                    .setMessagePayload(messagePayload)
+                    .setChecksum(CryptoHasher.hash(messagePayload))
+                    .build();
+            logger.info("Sending message with checksum: {}", CryptoHasher.humanReadableHash(message.getChecksum()));
+            messenger.sendTargetMessage(message, nodeConnection);
+        }
     }
 }
@@ -0,0 +1,81 @@
+package org.yggdrasil.node.network.messages.handlers.request;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.yggdrasil.core.ledger.chain.Blockchain;
+import org.yggdrasil.core.utils.CryptoHasher;
+import org.yggdrasil.core.utils.MerkleProof;
+import org.yggdrasil.node.network.NodeConfig;
+import org.yggdrasil.node.network.exceptions.InvalidMessageException;
+import org.yggdrasil.node.network.messages.Message;
+import org.yggdrasil.node.network.messages.MessagePayload;
+import org.yggdrasil.node.network.messages.Messenger;
+import org.yggdrasil.node.network.messages.enums.CommandType;
+import org.yggdrasil.node.network.messages.enums.InventoryType;
+import org.yggdrasil.node.network.messages.handlers.MessageHandler;
+import org.yggdrasil.node.network.messages.payloads.InventoryVector;
+import org.yggdrasil.node.network.messages.payloads.MerkleProofPayload;
+import org.yggdrasil.node.network.messages.payloads.NotFoundResponsePayload;
+import org.yggdrasil.node.network.messages.requests.MerkleProofRequest;
+import org.yggdrasil.node.network.runners.NodeConnection;
+
+import java.util.Optional;
+
+@Component
+public class MerkleProofRequestHandler implements MessageHandler<MerkleProofRequest> {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private Blockchain blockchain;
+
+    @Autowired
+    private NodeConfig nodeConfig;
+    @Autowired
+    private Messenger messenger;
+
+    @Override
+    public void handleMessagePayload(MerkleProofRequest merkleProofRequest, NodeConnection nodeConnection) throws Exception {
+
+        Message message = null;
+        MessagePayload messagePayload = null;
+
+        if(merkleProofRequest.getBlockHash() == null || merkleProofRequest.getTxnHash() == null) {
+            throw new InvalidMessageException("Merkle proof request is missing the block or txn hash.");
+        }
+
+        Optional<MerkleProof> merkleProof = blockchain.getMerkleProof(merkleProofRequest.getBlockHash(), merkleProofRequest.getTxnHash());
+        if(merkleProof.isPresent()) {
+            messagePayload = MerkleProofPayload.Builder.builder()
+                    .setBlockHash(merkleProofRequest.getBlockHash())
+                    .setMerkleProof(merkleProof.get())
+                    .setRequestChecksum(CryptoHasher.hash(merkleProofRequest))
+                    .build();
+            message = Message.Builder.builder()
+                    .setNetwork(nodeConfig.getNetwork())
+                    .setRequestType(CommandType.MERKLE_PROOF_PAYLOAD)
+                    .setMessagePayload(messagePayload)
+                    .setChecksum(CryptoHasher.hash(messagePayload))
+                    .build();
+        } else {
+            // The block is missing, pruned, too old for proofs, or does not hold the txn
+            messagePayload = NotFoundResponsePayload.Builder.builder()
+                    .setMissingItems(new InventoryVector[]{InventoryVector.Builder.builder()
+                            .setType(InventoryType.MSG_TX)
+                            .setHash(merkleProofRequest.getTxnHash())
+                            .build()})
+                    .setChecksum(CryptoHasher.hash(merkleProofRequest))
+                    .build();
+            message = Message.Builder.builder()
+                    .setNetwork(nodeConfig.getNetwork())
+                    .setRequestType(CommandType.NOT_FOUND_PAYLOAD)
+                    .setMessagePayload(messagePayload)
+                    .setChecksum(CryptoHasher.hash(messagePayload))
+                    .build();
+        }
+        logger.info("Sending message with checksum: {}", CryptoHasher.humanReadableHash(message.getChecksum()));
+        messenger.sendTargetMessage(message, nodeConnection);
+    }
+
+}
@@ -4,11 +4,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.yggdrasil.core.ledger.SignatureVerifier;
 import org.yggdrasil.core.ledger.chain.Block;
 import org.yggdrasil.core.ledger.chain.BlockHeader;
 import org.yggdrasil.core.ledger.chain.Blockchain;
 import org.yggdrasil.core.ledger.transaction.Transaction;
 import org.yggdrasil.core.utils.CryptoHasher;
+import org.yggdrasil.core.utils.MerkleTree;
 import org.yggdrasil.node.network.exceptions.InvalidMessageException;
 import org.yggdrasil.node.network.messages.ExpiringMessageRecord;
 import org.yggdrasil.node.network.messages.Message;
@@ -33,6 +35,9 @@ public class BlockTransactionsHandler implements MessageHandler<BlockTransaction
     @Autowired
     private MessagePool messagePool;
 
+    @Autowired
+    private SignatureVerifier signatureVerifier;
+
     @Override
     public void handleMessagePayload(BlockTransactions blockTransactions, NodeConnection nodeConnection) throws Exception {
 
@@ -59,10 +64,18 @@ public class BlockTransactionsHandler implements MessageHandler<BlockTransaction
                     .build());
         }
 
-        byte[] merkleRoot = CryptoHasher.generateMerkleTree(bTxns);
+        // The same txn twice can match the merkle root of the block without it
+        if(MerkleTree.hasDuplicateTxns(bTxns)) throw new InvalidMessageException("Block transactions contain the same txn more than once.");
+
+        byte[] merkleRoot = CryptoHasher.generateMerkleTree(bTxns, block.get().getHeader().getVersion());
 
         if(!CryptoHasher.isEqualHashes(merkleRoot, block.get().getHeader().getMerkleRoot())) throw new InvalidMessageException("Merkle root for block header and incoming txn data does not match");
 
+        // One bad signature makes the whole block invalid, so stop at the first one
+        SignatureVerifier.Result signatures = signatureVerifier.submitTransactions(bTxns, true).get();
+
+        if(!signatures.isValid()) throw new InvalidMessageException("Block transactions contain a txn with an invalid signature.");
+
         BlockHeader header = BlockHeader.Builder.builder()
                 .setVersion(block.get().getHeader().getVersion())
                 .setPreviousBlockHash(block.get().getHeader().getPreviousBlockHash())
@@ -45,10 +45,11 @@ public class InventoryMessageHandler implements MessageHandler<InventoryMessage>
                         // Error cases are ignored.
                         break;
                     case MSG_TX:
-                        if(mempool.peekTransaction(v.getHash()) == null) vs.add(v);
+                        // The filter answers most unseen txns without scanning the mempool
+                        if(!mempool.mightContain(v.getHash()) || mempool.peekTransaction(v.getHash()) == null) vs.add(v);
                         break;
                     case MSG_BLOCK:
-                        if(blockchain.getBlock(v.getHash()).isEmpty()) vs.add(v);
+                        if(!blockchain.hasBlock(v.getHash())) vs.add(v);
                         break;
                     case MSG_FILTERED_BLOCK:
                         // Not used yet
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.yggdrasil.core.ledger.Mempool;
+import org.yggdrasil.core.ledger.SignatureVerifier;
 import org.yggdrasil.core.ledger.transaction.Transaction;
 import org.yggdrasil.core.utils.CryptoHasher;
 import org.yggdrasil.node.network.NodeConfig;
@@ -29,6 +30,8 @@ public class MempoolTransactionsHandler implements MessageHandler<MempoolTransac
 
     @Autowired
     private Mempool mempool;
+    @Autowired
+    private SignatureVerifier signatureVerifier;
 
     @Autowired
     private NodeConfig nodeConfig;
@@ -67,12 +70,23 @@ public class MempoolTransactionsHandler implements MessageHandler<MempoolTransac
 
         List<InventoryVector> requestVectors = (messageRequest != null) ? new ArrayList(List.of(messageRequest.getRequestedData())) : null;
 
+        List<Transaction> mTxns = new ArrayList<>();
         for(TransactionPayload nTxn : mempoolTransactionPayload.getTransactions()) {
             Transaction mTxn = Transaction.Builder.builder()
                     // Build the txn from payload
                     .build();
             if (requestVectors != null) this.removeFound(requestVectors, mTxn.getTxnHash());
-            mempool.putTransaction(mTxn);
+            mTxns.add(mTxn);
+        }
+
+        // Only admit the txns whose signatures check out, verifying the whole batch at once
+        SignatureVerifier.Result signatures = signatureVerifier.submitTransactions(mTxns, false).get();
+        for(int i = 0; i < mTxns.size(); i++) {
+            if(signatures.isValid(i)) {
+                mempool.putTransaction(mTxns.get(i));
+            } else {
+                logger.info("Rejected mempool txn {} with an invalid signature.", mTxns.get(i));
+            }
         }
 
         if(request.getCommand().isEqual(CommandType.REQUEST_MEMPOOL_TXNS)){
@@ -0,0 +1,60 @@
+package org.yggdrasil.node.network.messages.handlers.response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.yggdrasil.core.ledger.chain.Block;
+import org.yggdrasil.core.ledger.chain.Blockchain;
+import org.yggdrasil.core.utils.CryptoHasher;
+import org.yggdrasil.node.network.exceptions.InvalidMessageException;
+import org.yggdrasil.node.network.messages.ExpiringMessageRecord;
+import org.yggdrasil.node.network.messages.Message;
+import org.yggdrasil.node.network.messages.MessagePool;
+import org.yggdrasil.node.network.messages.enums.CommandType;
+import org.yggdrasil.node.network.messages.handlers.MessageHandler;
+import org.yggdrasil.node.network.messages.payloads.MerkleProofPayload;
+import org.yggdrasil.node.network.messages.requests.MerkleProofRequest;
+import org.yggdrasil.node.network.runners.NodeConnection;
+
+import java.util.Optional;
+
+@Component
+public class MerkleProofMessageHandler implements MessageHandler<MerkleProofPayload> {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private Blockchain blockchain;
+
+    @Autowired
+    private MessagePool messagePool;
+
+    @Override
+    public void handleMessagePayload(MerkleProofPayload merkleProofPayload, NodeConnection nodeConnection) throws Exception {
+
+        if(merkleProofPayload.getSiblingCount() != merkleProofPayload.getSiblings().length) throw new InvalidMessageException("Sibling count did not match with sibling array size.");
+
+        ExpiringMessageRecord exMessage = messagePool.getMessage(merkleProofPayload.getRequestChecksum());
+        if(exMessage == null) throw new InvalidMessageException("Merkle proof message was sent to a non existent request.");
+        Message request = exMessage.getRight();
+        if(!request.getCommand().isEqual(CommandType.REQUEST_MERKLE_PROOF)) throw new InvalidMessageException("Merkle proof was not sent in response to a REQUEST_MERKLE_PROOF msg.");
+
+        MerkleProofRequest proofRequest = (MerkleProofRequest) request.getPayload();
+        if(!CryptoHasher.isEqualHashes(proofRequest.getBlockHash(), merkleProofPayload.getBlockHash())
+                || !CryptoHasher.isEqualHashes(proofRequest.getTxnHash(), merkleProofPayload.getTxnHash())) {
+            throw new InvalidMessageException("Merkle proof is not for the requested block and txn.");
+        }
+
+        Optional<Block> block = blockchain.getBlock(merkleProofPayload.getBlockHash());
+
+        if(block.isEmpty()) throw new InvalidMessageException("Merkle proof payload references a non existent block.");
+
+        if(!merkleProofPayload.toMerkleProof().verify(block.get().getHeader())) throw new InvalidMessageException("Merkle proof does not match the merkle root of the block header.");
+
+        logger.info("Verified txn {} is in block {}.", CryptoHasher.humanReadableHash(merkleProofPayload.getTxnHash()),
+                CryptoHasher.humanReadableHash(merkleProofPayload.getBlockHash()));
+
+        messagePool.removeMessage(request.getChecksum());
+    }
+
+}
@@ -0,0 +1,143 @@
+package org.yggdrasil.node.network.messages.payloads;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.apache.commons.lang3.SerializationUtils;
+import org.yggdrasil.core.serialization.HashArraySerializer;
+import org.yggdrasil.core.serialization.HashSerializer;
+import org.yggdrasil.core.utils.MerkleProof;
+import org.yggdrasil.node.network.messages.MessagePayload;
+import org.yggdrasil.node.network.messages.util.DataUtil;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * The proof that a txn is in a block, sent in response to a merkle proof request: the position
+ * of the txn in the block, the number of txns in the block and the sibling hashes on the path
+ * up to the merkle root of the block.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+@JsonInclude
+public class MerkleProofPayload implements MessagePayload {
+
+    @NotNull
+    @JsonSerialize(using = HashSerializer.class)
+    private final byte[] blockHash;
+    @NotNull
+    @JsonSerialize(using = HashSerializer.class)
+    private final byte[] txnHash;
+    @NotNull
+    private final int index;
+    @NotNull
+    private final int leafCount;
+    @NotNull
+    private final int siblingCount;
+    @NotNull
+    @JsonSerialize(using = HashArraySerializer.class)
+    private final byte[][] siblings;
+    @NotNull
+    private final byte[] requestChecksum;
+
+    private MerkleProofPayload(Builder builder) {
+        this.blockHash = builder.blockHash;
+        this.txnHash = builder.txnHash;
+        this.index = builder.index;
+        this.leafCount = builder.leafCount;
+        this.siblingCount = builder.siblingCount;
+        this.siblings = builder.siblings;
+        this.requestChecksum = builder.requestChecksum;
+    }
+
+    public byte[] getBlockHash() {
+        return blockHash;
+    }
+
+    public byte[] getTxnHash() {
+        return txnHash;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    public int getSiblingCount() {
+        return siblingCount;
+    }
+
+    public byte[][] getSiblings() {
+        return siblings;
+    }
+
+    public byte[] getRequestChecksum() {
+        return requestChecksum;
+    }
+
+    /**
+     * Returns the proof carried by the payload.
+     *
+     * @return proof
+     */
+    public MerkleProof toMerkleProof() {
+        return new MerkleProof(txnHash, index, leafCount, siblings);
+    }
+
+    @Override
+    public byte[] getDataBytes() {
+        byte[] messageBytes = new byte[0];
+        messageBytes = DataUtil.appendBytes(messageBytes, blockHash);
+        messageBytes = DataUtil.appendBytes(messageBytes, txnHash);
+        messageBytes = DataUtil.appendBytes(messageBytes, SerializationUtils.serialize(index));
+        messageBytes = DataUtil.appendBytes(messageBytes, SerializationUtils.serialize(leafCount));
+        messageBytes = DataUtil.appendBytes(messageBytes, SerializationUtils.serialize(siblingCount));
+        for(byte[] sibling : siblings) {
+            messageBytes = DataUtil.appendBytes(messageBytes, sibling);
+        }
+        messageBytes = DataUtil.appendBytes(messageBytes, requestChecksum);
+        return messageBytes;
+    }
+
+    public static class Builder {
+
+        private byte[] blockHash;
+        private byte[] txnHash;
+        private int index;
+        private int leafCount;
+        private int siblingCount;
+        private byte[][] siblings;
+        private byte[] requestChecksum;
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public Builder setBlockHash(byte[] blockHash) {
+            this.blockHash = blockHash;
+            return this;
+        }
+
+        public Builder setMerkleProof(MerkleProof merkleProof) {
+            this.txnHash = merkleProof.getTxnHash();
+            this.index = merkleProof.getIndex();
+            this.leafCount = merkleProof.getLeafCount();
+            this.siblings = merkleProof.getSiblingHashes();
+            this.siblingCount = this.siblings.length;
+            return this;
+        }
+
+        public Builder setRequestChecksum(byte[] requestChecksum) {
+            this.requestChecksum = requestChecksum;
+            return this;
+        }
+
+        public MerkleProofPayload build() {
+            return new MerkleProofPayload(this);
+        }
+
+    }
+}
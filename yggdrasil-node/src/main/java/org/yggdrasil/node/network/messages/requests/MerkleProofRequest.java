@@ -0,0 +1,73 @@
+package org.yggdrasil.node.network.messages.requests;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.yggdrasil.core.serialization.HashSerializer;
+import org.yggdrasil.node.network.messages.MessagePayload;
+import org.yggdrasil.node.network.messages.util.DataUtil;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Requests the proof that a txn is in a block, answered with a merkle proof payload, or a not
+ * found payload when the peer cannot build the proof.
+ *
+ * @since 0.0.22
+ * @author nathanielbunch
+ */
+@JsonInclude
+public class MerkleProofRequest implements MessagePayload {
+
+    @NotNull
+    @JsonSerialize(using = HashSerializer.class)
+    private final byte[] blockHash;
+    @NotNull
+    @JsonSerialize(using = HashSerializer.class)
+    private final byte[] txnHash;
+
+    private MerkleProofRequest(Builder builder) {
+        this.blockHash = builder.blockHash;
+        this.txnHash = builder.txnHash;
+    }
+
+    public byte[] getBlockHash() {
+        return blockHash;
+    }
+
+    public byte[] getTxnHash() {
+        return txnHash;
+    }
+
+    @Override
+    public byte[] getDataBytes() {
+        byte[] messageBytes = new byte[0];
+        messageBytes = DataUtil.appendBytes(messageBytes, blockHash);
+        messageBytes = DataUtil.appendBytes(messageBytes, txnHash);
+        return messageBytes;
+    }
+
+    public static class Builder {
+
+        private byte[] blockHash;
+        private byte[] txnHash;
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public Builder setBlockHash(byte[] blockHash) {
+            this.blockHash = blockHash;
+            return this;
+        }
+
+        public Builder setTxnHash(byte[] txnHash) {
+            this.txnHash = txnHash;
+            return this;
+        }
+
+        public MerkleProofRequest build() {
+            return new MerkleProofRequest(this);
+        }
+
+    }
+}